@@ -62,6 +62,16 @@ docker exec kafka kafka-topics --create \
   --replication-factor 1 \
   --if-not-exists
 
+# Retry ladder topics (one per backoff tier)
+for tier in 2s 4s 8s; do
+  docker exec kafka kafka-topics --create \
+    --topic payment-events-retry-$tier \
+    --bootstrap-server localhost:9092 \
+    --partitions 3 \
+    --replication-factor 1 \
+    --if-not-exists
+done
+
 # Start RabbitMQ
 echo "📦 Starting RabbitMQ..."
 docker-compose up -d rabbitmq
@@ -215,6 +225,17 @@ create_topics_manually() {
         --config retention.ms=86400000 \
         --if-not-exists
 
+    for tier in 2s 4s 8s; do
+        echo "Creating payment-events-retry-$tier topic..."
+        docker exec kafka kafka-topics --create \
+            --topic payment-events-retry-$tier \
+            --bootstrap-server localhost:9092 \
+            --partitions 3 \
+            --replication-factor 1 \
+            --config retention.ms=86400000 \
+            --if-not-exists
+    done
+
     # Verify topics were created
     echo "✅ Topics created successfully:"
     docker exec kafka kafka-topics --bootstrap-server localhost:9092 --list
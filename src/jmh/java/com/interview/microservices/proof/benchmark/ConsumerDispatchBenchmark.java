@@ -0,0 +1,130 @@
+package com.interview.microservices.proof.benchmark;
+
+import com.interview.microservices.proof.dlq.config.KafkaConfig;
+import com.interview.microservices.proof.dlq.model.PaymentEvent;
+import com.interview.microservices.proof.dlq.service.KafkaPaymentProducer;
+import com.interview.microservices.proof.dlq.service.PaymentService;
+import com.interview.microservices.proof.dlq.util.KafkaPaymentConsumer;
+import com.interview.microservices.proof.dlq.util.KeyOrderedExecutor;
+import com.interview.microservices.proof.dlq.util.OffsetTracker;
+import com.interview.microservices.proof.dlq.util.PaymentEventConsumer;
+import com.interview.microservices.proof.dlq.util.PaymentMetrics;
+import com.rabbitmq.client.Channel;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.mockito.Mockito;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.kafka.support.Acknowledgment;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+// Listener dispatch overhead of both consumers with payment processing stubbed out
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConsumerDispatchBenchmark {
+
+    @Param({"100"})
+    public int batchSize;
+
+    private KafkaPaymentConsumer kafkaConsumer;
+    private PaymentEventConsumer rabbitConsumer;
+    private KeyOrderedExecutor workerPool;
+    private Channel channel;
+    private Consumer<?, ?> consumer;
+    private PaymentEvent event;
+    private ConsumerRecord<String, PaymentEvent> record;
+    private Message message;
+    private List<ConsumerRecord<String, PaymentEvent>> batch;
+    private final Acknowledgment acknowledgment = () -> { };
+
+    @Setup
+    public void setUp() {
+        PaymentMetrics metrics = new PaymentMetrics(new SimpleMeterRegistry());
+        PaymentService paymentService = new NoOpPaymentService(metrics);
+        KafkaPaymentProducer producer = Mockito.mock(KafkaPaymentProducer.class, Mockito.withSettings().stubOnly());
+        RabbitTemplate rabbitTemplate = Mockito.mock(RabbitTemplate.class, Mockito.withSettings().stubOnly());
+        channel = Mockito.mock(Channel.class, Mockito.withSettings().stubOnly());
+        consumer = Mockito.mock(Consumer.class, Mockito.withSettings().stubOnly());
+        Mockito.when(consumer.assignment()).thenReturn(Set.of(new TopicPartition(KafkaConfig.MAIN_TOPIC, 0)));
+
+        workerPool = new KeyOrderedExecutor(16, "bench-worker-");
+        kafkaConsumer = new KafkaPaymentConsumer(paymentService, producer, workerPool, new OffsetTracker(batchSize * 10),
+                metrics, "payment-id");
+        rabbitConsumer = new PaymentEventConsumer(paymentService, rabbitTemplate, metrics);
+
+        event = new PaymentEvent("pay-001", "user-101", new BigDecimal("150.75"), "USD");
+        record = new ConsumerRecord<>(KafkaConfig.MAIN_TOPIC, 0, 0L, event.getPaymentId(), event);
+        message = new Message(new byte[0], new MessageProperties());
+        batch = new ArrayList<>(batchSize);
+        for (int i = 0; i < batchSize; i++) {
+            PaymentEvent batchEvent = new PaymentEvent("pay-" + i, "user-" + (i % 10), new BigDecimal("10.00"), "USD");
+            batch.add(new ConsumerRecord<>(KafkaConfig.MAIN_TOPIC, 0, i, batchEvent.getPaymentId(), batchEvent));
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws InterruptedException {
+        workerPool.shutdown();
+    }
+
+    @Benchmark
+    public void kafkaRecord() {
+        kafkaConsumer.handlePaymentEvent(record, acknowledgment);
+    }
+
+    @Benchmark
+    public void kafkaBatch() {
+        kafkaConsumer.handlePaymentBatch(batch, acknowledgment);
+    }
+
+    @Benchmark
+    public void kafkaParallel() {
+        kafkaConsumer.handlePaymentsInParallel(batch, consumer);
+    }
+
+    @Benchmark
+    public void rabbitRecord() {
+        rabbitConsumer.handlePaymentEvent(event, message, channel, 1L);
+    }
+
+    static class NoOpPaymentService extends PaymentService {
+        NoOpPaymentService(PaymentMetrics metrics) {
+            super(null, null, metrics);
+        }
+
+        @Override
+        public void processPayment(PaymentEvent event) {
+        }
+
+        @Override
+        public Map<Integer, Exception> processPayments(List<PaymentEvent> events) {
+            return new LinkedHashMap<>();
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package com.interview.microservices.proof.benchmark;
+
+import com.interview.microservices.proof.dlq.config.KafkaProducerProperties;
+import com.interview.microservices.proof.dlq.model.PaymentEvent;
+import org.apache.kafka.clients.producer.KafkaProducer;
+import org.apache.kafka.clients.producer.Producer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.kafka.support.serializer.JsonSerializer;
+import org.springframework.kafka.test.EmbeddedKafkaKraftBroker;
+
+import java.math.BigDecimal;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// Producer profiles against a local embedded broker: records/s (score) and bytes/s (aux counter)
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class KafkaProducerProfileBenchmark {
+
+    private static final String TOPIC = "payment-events-bench";
+    private static final int RECORDS_PER_INVOCATION = 1000;
+
+    @Param({KafkaProducerProperties.LOW_LATENCY, KafkaProducerProperties.HIGH_THROUGHPUT})
+    public String profile;
+
+    private EmbeddedKafkaKraftBroker broker;
+    private Producer<String, PaymentEvent> producer;
+    private PaymentEvent[] events;
+    private long payloadBytes;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        broker = new EmbeddedKafkaKraftBroker(1, 3, TOPIC);
+        broker.afterPropertiesSet();
+
+        KafkaProducerProperties properties = new KafkaProducerProperties();
+        properties.setBootstrapServers(broker.getBrokersAsString());
+        properties.setProfile(profile);
+        Map<String, Object> config = properties.producerConfig();
+        producer = new KafkaProducer<>(config, new StringSerializer(), new JsonSerializer<>());
+
+        events = new PaymentEvent[RECORDS_PER_INVOCATION];
+        try (JsonSerializer<PaymentEvent> sizing = new JsonSerializer<>()) {
+            for (int i = 0; i < events.length; i++) {
+                events[i] = new PaymentEvent("pay-" + i, "user-" + (i % 100), new BigDecimal("150.75"), "USD");
+                payloadBytes += sizing.serialize(TOPIC, events[i]).length;
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        producer.close();
+        broker.destroy();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(RECORDS_PER_INVOCATION)
+    public void send(ByteCounter counter) {
+        for (PaymentEvent event : events) {
+            producer.send(new ProducerRecord<>(TOPIC, event.getPaymentId(), event));
+        }
+        // Wait for every record to be acknowledged so the score reflects delivered records
+        producer.flush();
+        counter.bytes += payloadBytes;
+    }
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class ByteCounter {
+        // Reported as bytes/s of uncompressed payload
+        public long bytes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            bytes = 0;
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.interview.microservices.proof.benchmark;
+
+import com.interview.microservices.proof.dlq.config.PaymentEventDeserializer;
+import com.interview.microservices.proof.dlq.model.PaymentEvent;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.kafka.support.serializer.JsonDeserializer;
+import org.springframework.kafka.support.serializer.JsonSerializer;
+
+import java.math.BigDecimal;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// Kafka value (de)serialization of PaymentEvent as configured in KafkaConfig
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class KafkaSerializationBenchmark {
+
+    private static final String TOPIC = "payment-events";
+
+    private JsonSerializer<PaymentEvent> serializer;
+    private JsonDeserializer<PaymentEvent> deserializer;
+    private PaymentEventDeserializer consumerDeserializer;
+    private PaymentEvent event;
+    private byte[] eventBytes;
+
+    @Setup
+    public void setUp() {
+        serializer = new JsonSerializer<>();
+        deserializer = new JsonDeserializer<>(PaymentEvent.class);
+        deserializer.addTrustedPackages("*");
+        consumerDeserializer = new PaymentEventDeserializer();
+        consumerDeserializer.configure(Map.of(JsonDeserializer.VALUE_DEFAULT_TYPE, PaymentEvent.class.getName(),
+                JsonDeserializer.TRUSTED_PACKAGES, "*"), false);
+
+        event = new PaymentEvent("pay-001", "user-101", new BigDecimal("150.75"), "USD");
+        eventBytes = serializer.serialize(TOPIC, event);
+    }
+
+    @TearDown
+    public void tearDown() {
+        serializer.close();
+        deserializer.close();
+        consumerDeserializer.close();
+    }
+
+    @Benchmark
+    public byte[] serialize() {
+        return serializer.serialize(TOPIC, event);
+    }
+
+    @Benchmark
+    public PaymentEvent deserialize() {
+        return deserializer.deserialize(TOPIC, eventBytes);
+    }
+
+    // What the listeners' consumer does per record: deserialize and keep the raw payload for the DLQ
+    @Benchmark
+    public PaymentEvent deserializeKeepingRawValue() {
+        return consumerDeserializer.deserialize(TOPIC, new RecordHeaders(), eventBytes);
+    }
+
+    @Benchmark
+    public PaymentEvent roundTrip() {
+        return deserializer.deserialize(TOPIC, serializer.serialize(TOPIC, event));
+    }
+}
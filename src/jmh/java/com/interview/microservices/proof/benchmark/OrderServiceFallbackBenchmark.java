@@ -0,0 +1,143 @@
+package com.interview.microservices.proof.benchmark;
+
+import com.interview.microservices.proof.circuitBreaker.config.dto.ApiResponse;
+import com.interview.microservices.proof.circuitBreaker.config.dto.Order;
+import com.interview.microservices.proof.circuitBreaker.service.AdaptiveConcurrencyLimiter;
+import com.interview.microservices.proof.circuitBreaker.service.CacheService;
+import com.interview.microservices.proof.circuitBreaker.service.ExternalOrderService;
+import com.interview.microservices.proof.circuitBreaker.service.HotKeyTracker;
+import com.interview.microservices.proof.circuitBreaker.service.OrderService;
+import com.interview.microservices.proof.circuitBreaker.service.ServiceHealthRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.beans.DirectFieldAccessor;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+// OrderService fallback chain with an in-memory CacheService and an always-failing downstream
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OrderServiceFallbackBenchmark {
+
+    private static final String CACHED_ORDER = "ORD_CACHED";
+    private static final String UNKNOWN_ORDER = "ORD_UNKNOWN";
+    private static final String CUSTOMER = "CUST_456";
+
+    private OrderService orderService;
+    private StubCacheService cacheService;
+    private StubHealthRegistry healthRegistry;
+
+    @Setup
+    public void setUp() {
+        cacheService = new StubCacheService();
+        cacheService.order = new Order(CACHED_ORDER, CUSTOMER, "Product A", 299.99, "ACTIVE", LocalDateTime.now());
+        cacheService.history = List.of(cacheService.order);
+        healthRegistry = new StubHealthRegistry();
+
+        orderService = new OrderService();
+        DirectFieldAccessor fields = new DirectFieldAccessor(orderService);
+        fields.setPropertyValue("externalService", new FailingExternalOrderService());
+        fields.setPropertyValue("cacheService", cacheService);
+        fields.setPropertyValue("healthRegistry", healthRegistry);
+        fields.setPropertyValue("hotKeys", new HotKeyTracker(1000, 60000));
+        fields.setPropertyValue("meterRegistry", new SimpleMeterRegistry());
+        // A limit nothing here comes near, so calls always reach the failing downstream
+        fields.setPropertyValue("concurrencyLimiter",
+                new AdaptiveConcurrencyLimiter(1000, 1000, 1000, 0.2, 1.5, 0.9, Duration.ofSeconds(3)));
+    }
+
+    @Benchmark
+    public ApiResponse<Order> unhealthyShortCircuitToCache() {
+        healthRegistry.healthy = false;
+        return orderService.getOrderDetailsWithManualFallback(CACHED_ORDER);
+    }
+
+    @Benchmark
+    public ApiResponse<Order> downstreamFailureToCache() {
+        healthRegistry.healthy = true;
+        return orderService.getOrderDetailsWithManualFallback(CACHED_ORDER);
+    }
+
+    @Benchmark
+    public ApiResponse<Order> downstreamFailureToDefault() {
+        healthRegistry.healthy = true;
+        return orderService.getOrderDetailsWithManualFallback(UNKNOWN_ORDER);
+    }
+
+    @Benchmark
+    public CompletableFuture<ApiResponse<Order>> circuitBreakerFallbackToCache() {
+        return orderService.fallbackOrderDetails(CACHED_ORDER, new RuntimeException("open"));
+    }
+
+    @Benchmark
+    public ApiResponse<List<Order>> historyTieredFallbackToCache() {
+        return orderService.getOrderHistoryWithTieredFallback(CUSTOMER);
+    }
+
+    static class StubCacheService extends CacheService {
+        Order order;
+        List<Order> history;
+
+        @Override
+        public Order getCachedOrder(String orderId) {
+            return CACHED_ORDER.equals(orderId) ? order : null;
+        }
+
+        @Override
+        public Object getFallbackResponse(String key) {
+            return ("history:" + CUSTOMER).equals(key) ? history : null;
+        }
+
+        @Override
+        public void cacheOrder(String orderId, Order order) {
+        }
+
+        @Override
+        public void cacheFallbackResponse(String key, Object response) {
+        }
+    }
+
+    static class StubHealthRegistry extends ServiceHealthRegistry {
+        volatile boolean healthy;
+
+        @Override
+        public boolean isHealthy(String service) {
+            return healthy;
+        }
+
+        @Override
+        public void recordCall(String service, long latencyNanos, boolean success) {
+        }
+    }
+
+    static class FailingExternalOrderService extends ExternalOrderService {
+        private final RuntimeException failure = new RuntimeException("External service is unavailable");
+
+        @Override
+        public Order getOrderDetails(String orderId) {
+            throw failure;
+        }
+
+        @Override
+        public List<Order> getOrderHistory(String customerId) {
+            throw failure;
+        }
+    }
+}
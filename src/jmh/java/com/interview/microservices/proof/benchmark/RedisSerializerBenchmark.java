@@ -0,0 +1,86 @@
+package com.interview.microservices.proof.benchmark;
+
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.interview.microservices.proof.circuitBreaker.config.OrderBinaryRedisSerializer;
+import com.interview.microservices.proof.circuitBreaker.config.dto.Order;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Cache value serialization: current JSON serializer vs compact binary (with and without LZ4)
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RedisSerializerBenchmark {
+
+    @Param({"json", "binary", "binary-lz4"})
+    public String format;
+
+    @Param({"50"})
+    public int historySize;
+
+    private RedisSerializer<Object> serializer;
+    private Order order;
+    private List<Order> history;
+    private byte[] orderBytes;
+    private byte[] historyBytes;
+
+    @Setup
+    public void setUp() {
+        GenericJackson2JsonRedisSerializer json = new GenericJackson2JsonRedisSerializer()
+                .configure(mapper -> mapper.registerModule(new JavaTimeModule()));
+        serializer = switch (format) {
+            case "json" -> json;
+            case "binary" -> new OrderBinaryRedisSerializer(json, 0);
+            default -> new OrderBinaryRedisSerializer(json, 512);
+        };
+
+        order = new Order("ORD_123", "CUST_456", "Product_42", 299.99, "ACTIVE", LocalDateTime.now());
+        history = new ArrayList<>(historySize);
+        for (int i = 0; i < historySize; i++) {
+            history.add(new Order("ORD_" + i, "CUST_456", "Product_" + (i % 10), 10.0 * i,
+                    "COMPLETED", LocalDateTime.now().minusDays(i)));
+        }
+
+        orderBytes = serializer.serialize(order);
+        historyBytes = serializer.serialize(history);
+    }
+
+    @Benchmark
+    public byte[] serializeOrder() {
+        return serializer.serialize(order);
+    }
+
+    @Benchmark
+    public Object deserializeOrder() {
+        return serializer.deserialize(orderBytes);
+    }
+
+    @Benchmark
+    public byte[] serializeHistory() {
+        return serializer.serialize(history);
+    }
+
+    @Benchmark
+    public Object deserializeHistory() {
+        return serializer.deserialize(historyBytes);
+    }
+}
@@ -1,7 +1,13 @@
 package com.interview.microservices.proof.circuitBreaker.config;
 
+import com.interview.microservices.proof.circuitBreaker.service.AdaptiveConcurrencyLimiter;
+import com.interview.microservices.proof.circuitBreaker.service.RequestHedger;
 import io.github.resilience4j.circuitbreaker.CircuitBreaker;
 import io.github.resilience4j.timelimiter.TimeLimiter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
@@ -11,6 +17,39 @@ import java.time.Duration;
 @Configuration
 public class CircuitBreakerConfig {
 
+    @Value("${order.limiter.initial-limit:20}")
+    private int initialLimit;
+
+    @Value("${order.limiter.min-limit:4}")
+    private int minLimit;
+
+    @Value("${order.limiter.max-limit:200}")
+    private int maxLimit;
+
+    @Value("${order.limiter.smoothing:0.2}")
+    private double smoothing;
+
+    @Value("${order.limiter.rtt-tolerance:1.5}")
+    private double tolerance;
+
+    @Value("${order.limiter.backoff-ratio:0.9}")
+    private double backoffRatio;
+
+    @Value("${order.hedge.enabled:true}")
+    private boolean hedgeEnabled;
+
+    @Value("${order.hedge.percentile:0.95}")
+    private double hedgePercentile;
+
+    @Value("${order.hedge.min-delay-ms:50}")
+    private long hedgeMinDelayMs;
+
+    @Value("${order.hedge.budget-percent:10}")
+    private double hedgeBudgetPercent;
+
+    @Value("${order.hedge.max-burst:10}")
+    private int hedgeMaxBurst;
+
     @Bean
     public CircuitBreaker orderServiceCircuitBreaker() {
         return CircuitBreaker.ofDefaults("orderService");
@@ -20,5 +59,43 @@ public class CircuitBreakerConfig {
     public TimeLimiter orderServiceTimeLimiter() {
         return TimeLimiter.of(Duration.ofSeconds(3));
     }
-}
 
+    // Concurrency limit for external order service calls, adapted to its latency
+    @Bean
+    public AdaptiveConcurrencyLimiter orderServiceLimiter(TimeLimiter orderServiceTimeLimiter,
+                                                          MeterRegistry meterRegistry) {
+        Duration timeout = orderServiceTimeLimiter.getTimeLimiterConfig().getTimeoutDuration();
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(initialLimit, minLimit, maxLimit,
+                smoothing, tolerance, backoffRatio, timeout);
+
+        Gauge.builder("order.limiter.limit", limiter, AdaptiveConcurrencyLimiter::getLimit)
+                .description("Current concurrency limit for the external order service")
+                .register(meterRegistry);
+        Gauge.builder("order.limiter.in.flight", limiter, AdaptiveConcurrencyLimiter::getInFlight)
+                .description("Calls to the external order service in flight")
+                .register(meterRegistry);
+        FunctionCounter.builder("order.limiter.shed", limiter, AdaptiveConcurrencyLimiter::getRejected)
+                .description("Calls shed to the fallback because the limit was reached")
+                .register(meterRegistry);
+        return limiter;
+    }
+
+    // Hedges order lookups that run past the live latency percentile, within a load budget
+    @Bean(destroyMethod = "shutdown")
+    public RequestHedger orderServiceHedger(MeterRegistry meterRegistry) {
+        RequestHedger hedger = new RequestHedger(hedgeEnabled, hedgePercentile,
+                Duration.ofMillis(hedgeMinDelayMs), hedgeBudgetPercent, hedgeMaxBurst);
+
+        Gauge.builder("order.hedge.delay", hedger, RequestHedger::getHedgeDelayMillis)
+                .description("Time after which a second attempt is started, in milliseconds")
+                .baseUnit("milliseconds")
+                .register(meterRegistry);
+        FunctionCounter.builder("order.hedge.sent", hedger, RequestHedger::getHedged)
+                .description("Hedge attempts started")
+                .register(meterRegistry);
+        FunctionCounter.builder("order.hedge.won", hedger, RequestHedger::getHedgeWins)
+                .description("Hedge attempts that answered before the original")
+                .register(meterRegistry);
+        return hedger;
+    }
+}
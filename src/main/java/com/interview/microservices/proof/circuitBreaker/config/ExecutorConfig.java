@@ -0,0 +1,58 @@
+package com.interview.microservices.proof.circuitBreaker.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Executor for blocking calls to the external order service
+@Configuration
+@Slf4j
+public class ExecutorConfig {
+
+    @Value("${order.executor.virtual-threads:true}")
+    private boolean virtualThreads;
+
+    @Value("${order.executor.max-threads:64}")
+    private int maxThreads;
+
+    @Value("${order.executor.queue-capacity:256}")
+    private int queueCapacity;
+
+    @Bean(destroyMethod = "shutdown")
+    public ExecutorService orderServiceExecutor() {
+        // Virtual threads on JDK 21+: one cheap thread per call, so the downstream sets the limit
+        if (virtualThreads && Runtime.version().feature() >= 21) {
+            try {
+                ExecutorService executor = (ExecutorService) Executors.class
+                        .getMethod("newVirtualThreadPerTaskExecutor")
+                        .invoke(null);
+                log.info("Order service calls run on virtual threads");
+                return executor;
+            } catch (ReflectiveOperationException e) {
+                log.warn("Virtual threads unavailable, falling back to a bounded pool", e);
+            }
+        }
+
+        AtomicInteger threadIndex = new AtomicInteger();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                maxThreads, maxThreads,
+                60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "order-service-" + threadIndex.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        executor.allowCoreThreadTimeOut(true);
+        log.info("Order service calls run on a bounded pool of {} threads", maxThreads);
+        return executor;
+    }
+}
@@ -0,0 +1,203 @@
+package com.interview.microservices.proof.circuitBreaker.config;
+
+import com.interview.microservices.proof.circuitBreaker.config.dto.Order;
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.lz4.LZ4FastDecompressor;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compact binary format for {@link Order} and {@code List<Order>} cache values.
+ * <p>
+ * Layout: {@code MAGIC, VERSION, TYPE, body}. Fields are written in declaration order with no
+ * field names or type metadata; order lists above the LZ4 threshold are stored compressed.
+ * Any other value is delegated to the fallback serializer, and values without the magic byte
+ * (e.g. entries written as JSON before the switch) are read back through it as well.
+ */
+public class OrderBinaryRedisSerializer implements RedisSerializer<Object> {
+
+    // Never the first byte of a JSON document
+    static final byte MAGIC = (byte) 0xB1;
+    static final byte VERSION = 1;
+
+    private static final byte TYPE_ORDER = 1;
+    private static final byte TYPE_ORDER_LIST = 2;
+    private static final byte TYPE_ORDER_LIST_LZ4 = 3;
+
+    private static final LZ4Compressor COMPRESSOR = LZ4Factory.fastestInstance().fastCompressor();
+    private static final LZ4FastDecompressor DECOMPRESSOR = LZ4Factory.fastestInstance().fastDecompressor();
+
+    private final RedisSerializer<Object> fallback;
+    private final int lz4ThresholdBytes;
+
+    /**
+     * @param fallback          serializer for values that are not orders
+     * @param lz4ThresholdBytes order lists larger than this are LZ4-compressed; {@code <= 0} disables compression
+     */
+    public OrderBinaryRedisSerializer(RedisSerializer<Object> fallback, int lz4ThresholdBytes) {
+        this.fallback = fallback;
+        this.lz4ThresholdBytes = lz4ThresholdBytes;
+    }
+
+    @Override
+    public byte[] serialize(Object value) throws SerializationException {
+        if (value instanceof Order order) {
+            return encode(TYPE_ORDER, out -> writeOrder(out, order));
+        }
+        if (isOrderList(value)) {
+            @SuppressWarnings("unchecked")
+            List<Order> orders = (List<Order>) value;
+            return serializeList(orders);
+        }
+        return fallback.serialize(value);
+    }
+
+    @Override
+    public Object deserialize(byte[] bytes) throws SerializationException {
+        if (bytes == null || bytes.length == 0) {
+            return null;
+        }
+        if (bytes[0] != MAGIC) {
+            return fallback.deserialize(bytes);
+        }
+        if (bytes.length < 3 || bytes[1] != VERSION) {
+            throw new SerializationException("Unsupported binary cache format version: " + (bytes.length > 1 ? bytes[1] : -1));
+        }
+
+        try {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes, 3, bytes.length - 3));
+            switch (bytes[2]) {
+                case TYPE_ORDER:
+                    return readOrder(in);
+                case TYPE_ORDER_LIST:
+                    return readOrderList(in);
+                case TYPE_ORDER_LIST_LZ4:
+                    int length = in.readInt();
+                    byte[] body = DECOMPRESSOR.decompress(bytes, 7, length);
+                    return readOrderList(new DataInputStream(new ByteArrayInputStream(body)));
+                default:
+                    throw new SerializationException("Unknown binary cache value type: " + bytes[2]);
+            }
+        } catch (IOException e) {
+            throw new SerializationException("Failed to read binary cache value", e);
+        }
+    }
+
+    private byte[] serializeList(List<Order> orders) {
+        byte[] encoded = encode(TYPE_ORDER_LIST, out -> writeOrderList(out, orders));
+        int bodyLength = encoded.length - 3;
+        if (lz4ThresholdBytes <= 0 || bodyLength <= lz4ThresholdBytes) {
+            return encoded;
+        }
+
+        byte[] compressed = COMPRESSOR.compress(encoded, 3, bodyLength);
+        byte[] result = new byte[7 + compressed.length];
+        result[0] = MAGIC;
+        result[1] = VERSION;
+        result[2] = TYPE_ORDER_LIST_LZ4;
+        result[3] = (byte) (bodyLength >>> 24);
+        result[4] = (byte) (bodyLength >>> 16);
+        result[5] = (byte) (bodyLength >>> 8);
+        result[6] = (byte) bodyLength;
+        System.arraycopy(compressed, 0, result, 7, compressed.length);
+        return result;
+    }
+
+    private static boolean isOrderList(Object value) {
+        if (!(value instanceof List<?> list) || list.isEmpty()) {
+            return false;
+        }
+        for (Object element : list) {
+            if (!(element instanceof Order)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static byte[] encode(byte type, BodyWriter writer) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeByte(MAGIC);
+            out.writeByte(VERSION);
+            out.writeByte(type);
+            writer.write(out);
+            out.flush();
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new SerializationException("Failed to write binary cache value", e);
+        }
+    }
+
+    private static void writeOrderList(DataOutputStream out, List<Order> orders) throws IOException {
+        out.writeInt(orders.size());
+        for (Order order : orders) {
+            writeOrder(out, order);
+        }
+    }
+
+    private static List<Order> readOrderList(DataInputStream in) throws IOException {
+        int size = in.readInt();
+        List<Order> orders = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            orders.add(readOrder(in));
+        }
+        return orders;
+    }
+
+    private static void writeOrder(DataOutputStream out, Order order) throws IOException {
+        writeString(out, order.getOrderId());
+        writeString(out, order.getCustomerId());
+        writeString(out, order.getProductName());
+        out.writeDouble(order.getAmount());
+        writeString(out, order.getStatus());
+
+        LocalDateTime createdAt = order.getCreatedAt();
+        out.writeBoolean(createdAt != null);
+        if (createdAt != null) {
+            out.writeLong(createdAt.toEpochSecond(ZoneOffset.UTC));
+            out.writeInt(createdAt.getNano());
+        }
+    }
+
+    private static Order readOrder(DataInputStream in) throws IOException {
+        Order order = new Order();
+        order.setOrderId(readString(in));
+        order.setCustomerId(readString(in));
+        order.setProductName(readString(in));
+        order.setAmount(in.readDouble());
+        order.setStatus(readString(in));
+        if (in.readBoolean()) {
+            order.setCreatedAt(LocalDateTime.ofEpochSecond(in.readLong(), in.readInt(), ZoneOffset.UTC));
+        }
+        return order;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    @FunctionalInterface
+    private interface BodyWriter {
+        void write(DataOutputStream out) throws IOException;
+    }
+}
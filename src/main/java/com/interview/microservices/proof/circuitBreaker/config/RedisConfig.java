@@ -1,18 +1,22 @@
 package com.interview.microservices.proof.circuitBreaker.config;
 
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.cache.CacheManager;
 import org.springframework.cache.annotation.EnableCaching;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
 import org.springframework.data.redis.cache.RedisCacheConfiguration;
 import org.springframework.data.redis.cache.RedisCacheManager;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
 import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
 import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
 import org.springframework.data.redis.serializer.RedisSerializationContext;
+import org.springframework.data.redis.serializer.RedisSerializer;
 import org.springframework.data.redis.serializer.StringRedisSerializer;
 
 import java.time.Duration;
@@ -42,6 +46,9 @@ public class RedisConfig {
     @Value("${spring.cache.redis.time-to-live:30}")
     private int cacheTimeToLive;
 
+    @Value("${cache.serialization.lz4-threshold-bytes:512}")
+    private int lz4ThresholdBytes;
+
     @Bean
     public RedisConnectionFactory redisConnectionFactory() {
         RedisStandaloneConfiguration redisStandaloneConfiguration = new RedisStandaloneConfiguration();
@@ -60,12 +67,26 @@ public class RedisConfig {
         }
 
         LettuceConnectionFactory connectionFactory = new LettuceConnectionFactory(redisStandaloneConfiguration);
+        // Multiplex all non-blocking commands over one shared native connection
+        connectionFactory.setShareNativeConnection(true);
         connectionFactory.afterPropertiesSet();
         return connectionFactory;
     }
 
     @Bean
+    @Primary
     public RedisTemplate<String, Object> redisTemplate(RedisConnectionFactory connectionFactory) {
+        return createTemplate(connectionFactory, jsonRedisSerializer());
+    }
+
+    // Same connection, compact binary values for Order / List<Order>; CacheService picks it per key prefix
+    @Bean
+    public RedisTemplate<String, Object> binaryRedisTemplate(RedisConnectionFactory connectionFactory) {
+        return createTemplate(connectionFactory, new OrderBinaryRedisSerializer(jsonRedisSerializer(), lz4ThresholdBytes));
+    }
+
+    private RedisTemplate<String, Object> createTemplate(RedisConnectionFactory connectionFactory,
+                                                         RedisSerializer<Object> valueSerializer) {
         RedisTemplate<String, Object> template = new RedisTemplate<>();
         template.setConnectionFactory(connectionFactory);
 
@@ -74,28 +95,40 @@ public class RedisConfig {
         template.setHashKeySerializer(new StringRedisSerializer());
 
         // Value serialization
-        template.setValueSerializer(new GenericJackson2JsonRedisSerializer());
-        template.setHashValueSerializer(new GenericJackson2JsonRedisSerializer());
+        template.setValueSerializer(valueSerializer);
+        template.setHashValueSerializer(valueSerializer);
 
-        // Enable transaction support
-        template.setEnableTransactionSupport(true);
+        // No transaction support: cache traffic never runs in a transaction, and binding
+        // connections to threads would defeat Lettuce's shared-connection multiplexing
 
         template.afterPropertiesSet();
         return template;
     }
 
+    private GenericJackson2JsonRedisSerializer jsonRedisSerializer() {
+        // Order.createdAt is a LocalDateTime, which Jackson can't write without the JSR-310 module
+        return new GenericJackson2JsonRedisSerializer()
+                .configure(mapper -> mapper.registerModule(new JavaTimeModule()));
+    }
+
+    @Bean
+    public RedisMessageListenerContainer redisMessageListenerContainer(RedisConnectionFactory connectionFactory) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(connectionFactory);
+        return container;
+    }
+
     @Bean
     public CacheManager cacheManager(RedisConnectionFactory connectionFactory) {
         RedisCacheConfiguration config = RedisCacheConfiguration.defaultCacheConfig()
                 .entryTtl(Duration.ofMinutes(cacheTimeToLive))
                 .serializeKeysWith(RedisSerializationContext.SerializationPair.fromSerializer(new StringRedisSerializer()))
-                .serializeValuesWith(RedisSerializationContext.SerializationPair.fromSerializer(new GenericJackson2JsonRedisSerializer()))
+                .serializeValuesWith(RedisSerializationContext.SerializationPair.fromSerializer(jsonRedisSerializer()))
                 .disableCachingNullValues()
                 .prefixCacheNameWith("app:cache:");
 
         return RedisCacheManager.builder(connectionFactory)
                 .cacheDefaults(config)
-                .transactionAware()
                 .build();
     }
 }
\ No newline at end of file
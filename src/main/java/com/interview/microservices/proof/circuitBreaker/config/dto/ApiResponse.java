@@ -11,7 +11,7 @@ public class ApiResponse<T> {
     private boolean success;
     private T data;
     private String message;
-    private String source; // "LIVE", "CACHE", "FALLBACK"
+    private String source; // "LIVE", "CACHE", "STALE", "FALLBACK"
 
     public static <T> ApiResponse<T> success(T data, String source) {
         return new ApiResponse<>(true, data, "Success", source);
@@ -13,10 +13,13 @@ import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
 
@@ -25,28 +28,30 @@ import java.util.concurrent.TimeUnit;
 @Slf4j
 public class OrderController {
 
+    private static final int MAX_BATCH_SIZE = 500;
+
     @Autowired
     private OrderService orderService;
 
     @GetMapping("/{orderId}")
-    public ResponseEntity<ApiResponse<Order>> getOrderDetails(@PathVariable String orderId) {
-        try {
-            // Using Circuit Breaker approach
-            CompletableFuture<ApiResponse<Order>> future = orderService.getOrderDetailsWithCircuitBreaker(orderId);
-            ApiResponse<Order> response = future.get(5, TimeUnit.SECONDS);
-
-            HttpStatus status = response.isSuccess() ? HttpStatus.OK : HttpStatus.PARTIAL_CONTENT;
-            return ResponseEntity.status(status).body(response);
-
-        } catch (Exception e) {
-            log.error("Error getting order details for: {}", orderId, e);
-            Order defaultOrder = Order.defaultOrder(orderId);
-            ApiResponse<Order> fallbackResponse = ApiResponse.fallback(
-                    defaultOrder,
-                    "Service error: " + e.getMessage()
-            );
-            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(fallbackResponse);
-        }
+    public CompletableFuture<ResponseEntity<ApiResponse<Order>>> getOrderDetails(@PathVariable String orderId) {
+        // Stale-while-revalidate cache in front of the Circuit Breaker approach; the servlet thread
+        // is released until the future completes
+        return orderService.getOrderDetailsWithStaleWhileRevalidate(orderId)
+                .orTimeout(5, TimeUnit.SECONDS)
+                .thenApply(response -> {
+                    HttpStatus status = response.isSuccess() ? HttpStatus.OK : HttpStatus.PARTIAL_CONTENT;
+                    return ResponseEntity.status(status).body(response);
+                })
+                .exceptionally(e -> {
+                    log.error("Error getting order details for: {}", orderId, e);
+                    Order defaultOrder = Order.defaultOrder(orderId);
+                    ApiResponse<Order> fallbackResponse = ApiResponse.fallback(
+                            defaultOrder,
+                            "Service error: " + e.getMessage()
+                    );
+                    return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(fallbackResponse);
+                });
     }
 
     @GetMapping("/{orderId}/manual-fallback")
@@ -62,4 +67,18 @@ public class OrderController {
         HttpStatus status = response.isSuccess() ? HttpStatus.OK : HttpStatus.PARTIAL_CONTENT;
         return ResponseEntity.status(status).body(response);
     }
+
+    @PostMapping("/batch")
+    public ResponseEntity<Map<String, ApiResponse<Order>>> getOrderDetailsBatch(@RequestBody List<String> orderIds) {
+        // Null or blank ids can't be looked up, and a null one would break the lookup coalescing
+        if (orderIds.size() > MAX_BATCH_SIZE
+                || orderIds.stream().anyMatch(orderId -> orderId == null || orderId.isBlank())) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        Map<String, ApiResponse<Order>> responses = orderService.getOrderDetailsBatch(orderIds);
+        boolean allSuccess = responses.values().stream().allMatch(ApiResponse::isSuccess);
+        HttpStatus status = allSuccess ? HttpStatus.OK : HttpStatus.PARTIAL_CONTENT;
+        return ResponseEntity.status(status).body(responses);
+    }
 }
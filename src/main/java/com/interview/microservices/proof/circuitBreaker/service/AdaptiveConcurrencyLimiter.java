@@ -0,0 +1,128 @@
+package com.interview.microservices.proof.circuitBreaker.service;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Caps concurrent calls to a downstream at a limit that follows its latency. Each completed call
+ * compares its round trip with a slow-moving baseline: while calls are as fast as the baseline the
+ * limit grows, and as they slow down it shrinks in proportion (gradient). A call that runs past the
+ * timeout cuts the limit multiplicatively, like an AIMD backoff. Callers that find the limit
+ * reached should shed the request rather than queue behind a slow downstream.
+ */
+public class AdaptiveConcurrencyLimiter {
+
+    // Weight of each sample in the long-run baseline RTT, roughly a 100-sample window
+    private static final double BASELINE_WEIGHT = 0.01;
+    // Never shrink by more than half on a single sample
+    private static final double MIN_GRADIENT = 0.5;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final double smoothing;
+    private final double tolerance;
+    private final double backoffRatio;
+    private final long timeoutNanos;
+    private final LongSupplier clock;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final LongAdder rejected = new LongAdder();
+    private volatile double limit;
+    private double baselineRttNanos; // guarded by this
+
+    public AdaptiveConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit,
+                                      double smoothing, double tolerance, double backoffRatio,
+                                      Duration timeout) {
+        this(initialLimit, minLimit, maxLimit, smoothing, tolerance, backoffRatio, timeout, System::nanoTime);
+    }
+
+    AdaptiveConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit,
+                               double smoothing, double tolerance, double backoffRatio,
+                               Duration timeout, LongSupplier clock) {
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.smoothing = smoothing;
+        this.tolerance = tolerance;
+        this.backoffRatio = backoffRatio;
+        this.timeoutNanos = timeout.toNanos();
+        this.clock = clock;
+        this.limit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+    }
+
+    // Returns null when the limit is reached
+    public Permit tryAcquire() {
+        while (true) {
+            int current = inFlight.get();
+            if (current >= (int) limit) {
+                rejected.increment();
+                return null;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return new Permit(clock.getAsLong());
+            }
+        }
+    }
+
+    public int getLimit() {
+        return (int) limit;
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    public long getRejected() {
+        return rejected.sum();
+    }
+
+    private synchronized void onRelease(long rttNanos, int inFlightBefore, boolean success) {
+        if (rttNanos >= timeoutNanos) {
+            limit = Math.max(minLimit, limit * backoffRatio);
+            return;
+        }
+        // Failures say nothing about load on their own; slow ones still show up once they time out
+        if (!success) {
+            return;
+        }
+        if (baselineRttNanos == 0) {
+            baselineRttNanos = rttNanos;
+            return;
+        }
+
+        baselineRttNanos += (rttNanos - baselineRttNanos) * BASELINE_WEIGHT;
+        // After a long brownout the baseline lags behind a recovered downstream; pull it back down faster
+        if (baselineRttNanos > 2 * rttNanos) {
+            baselineRttNanos *= 0.95;
+        }
+
+        double gradient = Math.max(MIN_GRADIENT, Math.min(1.0, tolerance * baselineRttNanos / rttNanos));
+        // sqrt(limit) leaves headroom for some queueing, so the limit keeps probing upwards when latency is flat
+        double target = limit * gradient + Math.sqrt(limit);
+        // Only grow when the limit is what's holding callers back
+        if (target > limit && inFlightBefore < limit / 2) {
+            return;
+        }
+        limit = Math.max(minLimit, Math.min(maxLimit, limit * (1 - smoothing) + target * smoothing));
+    }
+
+    // One admitted call; release it exactly once when the call completes
+    public final class Permit {
+
+        private final long startNanos;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Permit(long startNanos) {
+            this.startNanos = startNanos;
+        }
+
+        public void release(boolean success) {
+            if (released.compareAndSet(false, true)) {
+                int before = inFlight.getAndDecrement();
+                onRelease(clock.getAsLong() - startNanos, before, success);
+            }
+        }
+    }
+}
@@ -4,13 +4,37 @@ package com.interview.microservices.proof.circuitBreaker.service;
 // 4. Cache Service
 // ==============================================
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import com.interview.microservices.proof.circuitBreaker.config.dto.Order;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.core.RedisOperations;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
 
 @Service
 @Slf4j
@@ -19,13 +43,95 @@ public class CacheService {
     @Autowired
     private RedisTemplate<String, Object> redisTemplate;
 
+    @Autowired
+    @Qualifier("binaryRedisTemplate")
+    private RedisTemplate<String, Object> binaryRedisTemplate;
+
+    @Autowired
+    private RedisMessageListenerContainer listenerContainer;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${cache.near.max-size:10000}")
+    private long nearCacheMaxSize;
+
+    @Value("${cache.near.ttl-seconds:10}")
+    private long nearCacheTtlSeconds;
+
+    @Value("${cache.serialization.binary-prefixes:}")
+    private String[] binaryPrefixes;
+
+    @Value("${cache.write-behind.enabled:false}")
+    private boolean writeBehindEnabled;
+
+    @Value("${cache.write-behind.capacity:10000}")
+    private int writeBehindCapacity;
+
+    @Value("${cache.write-behind.max-batch:500}")
+    private int writeBehindMaxBatch;
+
     private static final String ORDER_CACHE_PREFIX = "order:";
     private static final String FALLBACK_CACHE_PREFIX = "fallback:";
+    private static final String INVALIDATION_CHANNEL = "cache:invalidate";
+    private static final String INVALIDATION_SEPARATOR = "|";
+    private static final String[] METRIC_PREFIXES = {ORDER_CACHE_PREFIX, FALLBACK_CACHE_PREFIX};
+    private static final String OTHER_PREFIX = "other";
+    private static final Duration ORDER_TTL = Duration.ofHours(1);
+    private static final Duration FALLBACK_TTL = Duration.ofHours(24);
+    private static final long UNKNOWN_WRITE_TIME = 0;
+
+    // Identifies our own invalidation messages so we don't evict what we just wrote
+    private final String instanceId = UUID.randomUUID().toString();
+
+    // L1: in-process near cache in front of Redis (L2)
+    private Cache<String, Stamped> nearCache;
+
+    // Near cache entry with the time it was written to the cache, when known
+    private record Stamped(Object value, long writtenAtMillis) {}
+
+    // A cached value and how long ago it was written; age is null when that isn't known
+    public record CachedEntry<T>(T value, Duration age) {}
+
+    // Writes waiting for the next write-behind flush, keyed by Redis key
+    private final ConcurrentMap<String, PendingWrite> pendingWrites = new ConcurrentHashMap<>();
+
+    private record PendingWrite(Object value, Duration ttl) {}
+
+    private enum Lookup { NEAR_HIT, HIT, MISS, ERROR }
+
+    // cache.lookups counters per key prefix, indexed by Lookup; built once, read-only afterwards
+    private final Map<String, Counter[]> lookupCounters = new HashMap<>();
+
+    @PostConstruct
+    void initNearCache() {
+        nearCache = Caffeine.newBuilder()
+                .maximumSize(nearCacheMaxSize)
+                .expireAfterWrite(Duration.ofSeconds(nearCacheTtlSeconds))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, nearCache, "nearCache");
+
+        List<String> prefixes = new ArrayList<>(List.of(METRIC_PREFIXES));
+        prefixes.add(OTHER_PREFIX);
+        for (String prefix : prefixes) {
+            Counter[] counters = new Counter[Lookup.values().length];
+            for (Lookup lookup : Lookup.values()) {
+                counters[lookup.ordinal()] = Counter.builder("cache.lookups")
+                        .tag("prefix", prefix.endsWith(":") ? prefix.substring(0, prefix.length() - 1) : prefix)
+                        .tag("result", lookup.name().toLowerCase())
+                        .register(meterRegistry);
+            }
+            lookupCounters.put(prefix, counters);
+        }
+
+        listenerContainer.addMessageListener(this::onInvalidation, new ChannelTopic(INVALIDATION_CHANNEL));
+    }
 
     public void cacheOrder(String orderId, Order order) {
         try {
             String key = ORDER_CACHE_PREFIX + orderId;
-            redisTemplate.opsForValue().set(key, order, Duration.ofHours(1));
+            writeThrough(key, order, ORDER_TTL);
             log.info("Cached order: {}", orderId);
         } catch (Exception e) {
             log.error("Failed to cache order: {}", orderId, e);
@@ -35,17 +141,115 @@ public class CacheService {
     public Order getCachedOrder(String orderId) {
         try {
             String key = ORDER_CACHE_PREFIX + orderId;
-            return (Order) redisTemplate.opsForValue().get(key);
+            return (Order) readThrough(key);
+        } catch (Exception e) {
+            log.error("Failed to retrieve cached order: {}", orderId, e);
+            return null;
+        }
+    }
+
+    public CachedEntry<Order> getOrderEntry(String orderId) {
+        try {
+            return readEntry(ORDER_CACHE_PREFIX + orderId, ORDER_TTL);
         } catch (Exception e) {
             log.error("Failed to retrieve cached order: {}", orderId, e);
             return null;
         }
     }
 
+    public Map<String, Order> getCachedOrders(Collection<String> orderIds) {
+        Map<String, Order> found = new HashMap<>();
+        List<String> misses = new ArrayList<>();
+
+        for (String orderId : orderIds) {
+            Stamped stamped = nearCache.getIfPresent(ORDER_CACHE_PREFIX + orderId);
+            if (stamped != null) {
+                found.put(orderId, (Order) stamped.value());
+            } else {
+                misses.add(orderId);
+            }
+        }
+        countLookups(ORDER_CACHE_PREFIX, Lookup.NEAR_HIT, found.size());
+
+        if (misses.isEmpty()) {
+            return found;
+        }
+
+        try {
+            // One MGET for everything the near cache didn't have
+            List<String> keys = misses.stream().map(orderId -> ORDER_CACHE_PREFIX + orderId).toList();
+            List<Object> values = templateFor(ORDER_CACHE_PREFIX).opsForValue().multiGet(keys);
+            int hits = 0;
+            if (values != null) {
+                for (int i = 0; i < misses.size(); i++) {
+                    Object value = values.get(i);
+                    if (value != null) {
+                        nearCache.put(keys.get(i), new Stamped(value, UNKNOWN_WRITE_TIME));
+                        found.put(misses.get(i), (Order) value);
+                        hits++;
+                    }
+                }
+            }
+            countLookups(ORDER_CACHE_PREFIX, Lookup.HIT, hits);
+            countLookups(ORDER_CACHE_PREFIX, Lookup.MISS, misses.size() - hits);
+        } catch (Exception e) {
+            countLookups(ORDER_CACHE_PREFIX, Lookup.ERROR, misses.size());
+            log.error("Failed to retrieve {} cached orders", misses.size(), e);
+        }
+        return found;
+    }
+
+    public void cacheOrders(Map<String, Order> orders) {
+        if (orders.isEmpty()) {
+            return;
+        }
+
+        try {
+            Map<String, PendingWrite> writes = new HashMap<>();
+            orders.forEach((orderId, order) ->
+                    writes.put(ORDER_CACHE_PREFIX + orderId, new PendingWrite(order, ORDER_TTL)));
+
+            writePipelined(writes);
+            long now = System.currentTimeMillis();
+            writes.forEach((key, write) -> nearCache.put(key, new Stamped(write.value(), now)));
+            log.info("Cached {} orders", orders.size());
+        } catch (Exception e) {
+            log.error("Failed to cache {} orders", orders.size(), e);
+        }
+    }
+
+    // Write-behind: push buffered writes to Redis in pipelined batches
+    @Scheduled(fixedDelayString = "${cache.write-behind.flush-interval-ms:50}")
+    @PreDestroy
+    public void flushPendingWrites() {
+        while (!pendingWrites.isEmpty()) {
+            Map<String, PendingWrite> batch = new HashMap<>();
+            for (String key : pendingWrites.keySet()) {
+                if (batch.size() >= writeBehindMaxBatch) {
+                    break;
+                }
+                PendingWrite write = pendingWrites.remove(key);
+                if (write != null) {
+                    batch.put(key, write);
+                }
+            }
+
+            try {
+                writePipelined(batch);
+                log.debug("Flushed {} buffered cache writes", batch.size());
+            } catch (Exception e) {
+                // Put the batch back for the next flush; a newer write of the same key wins
+                batch.forEach(pendingWrites::putIfAbsent);
+                log.error("Failed to flush {} buffered cache writes, will retry", batch.size(), e);
+                return;
+            }
+        }
+    }
+
     public void cacheFallbackResponse(String key, Object response) {
         try {
             String fallbackKey = FALLBACK_CACHE_PREFIX + key;
-            redisTemplate.opsForValue().set(fallbackKey, response, Duration.ofHours(24));
+            writeThrough(fallbackKey, response, FALLBACK_TTL);
             log.info("Cached fallback response for key: {}", key);
         } catch (Exception e) {
             log.error("Failed to cache fallback response: {}", key, e);
@@ -55,30 +259,159 @@ public class CacheService {
     public Object getFallbackResponse(String key) {
         try {
             String fallbackKey = FALLBACK_CACHE_PREFIX + key;
-            return redisTemplate.opsForValue().get(fallbackKey);
+            return readThrough(fallbackKey);
         } catch (Exception e) {
             log.error("Failed to retrieve fallback response: {}", key, e);
             return null;
         }
     }
 
-    public boolean isServiceHealthy(String serviceName) {
+    public CachedEntry<Object> getFallbackEntry(String key) {
         try {
-            String healthKey = "health:" + serviceName;
-            String status = (String) redisTemplate.opsForValue().get(healthKey);
-            return "UP".equals(status);
+            return readEntry(FALLBACK_CACHE_PREFIX + key, FALLBACK_TTL);
         } catch (Exception e) {
-            return false;
+            log.error("Failed to retrieve fallback response: {}", key, e);
+            return null;
         }
     }
 
-    public void updateServiceHealth(String serviceName, boolean isHealthy) {
+    private Object readThrough(String key) {
+        Stamped stamped = nearCache.getIfPresent(key);
+        if (stamped != null) {
+            countLookups(key, Lookup.NEAR_HIT, 1);
+            return stamped.value();
+        }
+
+        Object value;
         try {
-            String healthKey = "health:" + serviceName;
-            redisTemplate.opsForValue().set(healthKey, isHealthy ? "UP" : "DOWN", Duration.ofMinutes(5));
-        } catch (Exception e) {
-            log.error("Failed to update service health: {}", serviceName, e);
+            value = templateFor(key).opsForValue().get(key);
+        } catch (RuntimeException e) {
+            countLookups(key, Lookup.ERROR, 1);
+            throw e;
         }
+        countLookups(key, value != null ? Lookup.HIT : Lookup.MISS, 1);
+        if (value != null) {
+            nearCache.put(key, new Stamped(value, UNKNOWN_WRITE_TIME));
+        }
+        return value;
     }
-}
 
+    // Like readThrough, but also works out the entry's age. Every write to these keys uses the same
+    // retention TTL, so in Redis the age is the part of that TTL already used up.
+    @SuppressWarnings("unchecked")
+    private <T> CachedEntry<T> readEntry(String key, Duration retention) {
+        Stamped stamped = nearCache.getIfPresent(key);
+        if (stamped != null && stamped.writtenAtMillis() != UNKNOWN_WRITE_TIME) {
+            countLookups(key, Lookup.NEAR_HIT, 1);
+            return new CachedEntry<>((T) stamped.value(),
+                    Duration.ofMillis(System.currentTimeMillis() - stamped.writtenAtMillis()));
+        }
+
+        List<Object> results;
+        try {
+            // Value and remaining TTL in one round-trip
+            results = templateFor(key).executePipelined(new SessionCallback<Object>() {
+                @Override
+                @SuppressWarnings("unchecked")
+                public Object execute(RedisOperations operations) {
+                    RedisOperations<String, Object> ops = (RedisOperations<String, Object>) operations;
+                    ops.opsForValue().get(key);
+                    ops.getExpire(key, TimeUnit.MILLISECONDS);
+                    return null;
+                }
+            });
+        } catch (RuntimeException e) {
+            countLookups(key, Lookup.ERROR, 1);
+            throw e;
+        }
+
+        Object value = results.get(0);
+        countLookups(key, value != null ? Lookup.HIT : Lookup.MISS, 1);
+        if (value == null) {
+            return null;
+        }
+
+        long now = System.currentTimeMillis();
+        long writtenAt = UNKNOWN_WRITE_TIME;
+        if (results.get(1) instanceof Number remaining && remaining.longValue() > 0) {
+            writtenAt = now - Math.max(0, retention.toMillis() - remaining.longValue());
+        }
+        nearCache.put(key, new Stamped(value, writtenAt));
+        Duration age = writtenAt == UNKNOWN_WRITE_TIME ? null : Duration.ofMillis(now - writtenAt);
+        return new CachedEntry<>((T) value, age);
+    }
+
+    private void countLookups(String key, Lookup lookup, int count) {
+        if (count <= 0) {
+            return;
+        }
+        Counter[] counters = lookupCounters.get(OTHER_PREFIX);
+        for (String prefix : METRIC_PREFIXES) {
+            if (key.startsWith(prefix)) {
+                counters = lookupCounters.get(prefix);
+                break;
+            }
+        }
+        counters[lookup.ordinal()].increment(count);
+    }
+
+    private void writeThrough(String key, Object value, Duration ttl) {
+        nearCache.put(key, new Stamped(value, System.currentTimeMillis()));
+
+        // Write-behind: buffer the write (latest value per key wins) and return straight away;
+        // fall back to a direct write when the buffer is full
+        if (writeBehindEnabled && pendingWrites.size() < writeBehindCapacity) {
+            pendingWrites.put(key, new PendingWrite(value, ttl));
+            return;
+        }
+
+        templateFor(key).opsForValue().set(key, value, ttl);
+
+        // Tell the other instances to drop their near copy
+        redisTemplate.convertAndSend(INVALIDATION_CHANNEL, instanceId + INVALIDATION_SEPARATOR + key);
+    }
+
+    private void writePipelined(Map<String, PendingWrite> writes) {
+        Map<RedisTemplate<String, Object>, Map<String, PendingWrite>> byTemplate = new HashMap<>();
+        writes.forEach((key, write) ->
+                byTemplate.computeIfAbsent(templateFor(key), template -> new HashMap<>()).put(key, write));
+
+        // All SETs and invalidations for a template go out in a single pipelined round-trip
+        byTemplate.forEach((template, templateWrites) -> template.executePipelined(new SessionCallback<Object>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public Object execute(RedisOperations operations) {
+                RedisOperations<String, Object> ops = (RedisOperations<String, Object>) operations;
+                templateWrites.forEach((key, write) -> {
+                    ops.opsForValue().set(key, write.value(), write.ttl());
+                    ops.convertAndSend(INVALIDATION_CHANNEL, instanceId + INVALIDATION_SEPARATOR + key);
+                });
+                return null;
+            }
+        }));
+    }
+
+    // Values under the configured prefixes use the compact binary format, everything else JSON
+    private RedisTemplate<String, Object> templateFor(String key) {
+        for (String prefix : binaryPrefixes) {
+            if (!prefix.isEmpty() && key.startsWith(prefix)) {
+                return binaryRedisTemplate;
+            }
+        }
+        return redisTemplate;
+    }
+
+    private void onInvalidation(Message message, byte[] pattern) {
+        Object body = redisTemplate.getValueSerializer().deserialize(message.getBody());
+        if (!(body instanceof String payload)) {
+            return;
+        }
+
+        int separator = payload.indexOf(INVALIDATION_SEPARATOR);
+        if (separator < 0 || payload.startsWith(instanceId + INVALIDATION_SEPARATOR)) {
+            return;
+        }
+
+        nearCache.invalidate(payload.substring(separator + 1));
+    }
+}
@@ -0,0 +1,137 @@
+package com.interview.microservices.proof.circuitBreaker.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+
+// Pre-loads the hottest orders and order histories into the cache, right after startup and then
+// on a schedule, so a new instance serves most requests from cache within seconds. Warming runs
+// on a few threads of its own, backs off as soon as the service is shed or looks unhealthy, and
+// never goes through the circuit breaker.
+@Component
+@Slf4j
+public class CacheWarmer {
+
+    @Autowired
+    private OrderService orderService;
+
+    @Autowired
+    private HotKeyTracker hotKeys;
+
+    @Autowired
+    private ServiceHealthRegistry healthRegistry;
+
+    @Value("${cache.warmup.enabled:true}")
+    private boolean enabled;
+
+    @Value("${cache.warmup.top-orders:200}")
+    private int topOrders;
+
+    @Value("${cache.warmup.top-customers:200}")
+    private int topCustomers;
+
+    @Value("${cache.warmup.concurrency:4}")
+    private int concurrency;
+
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    // Runs a warming round off the scheduler thread, which the write-behind flush and health checks share
+    private final ExecutorService coordinator = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "cache-warmer");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private ExecutorService loaders;
+
+    @PostConstruct
+    void initLoaders() {
+        AtomicInteger threadIndex = new AtomicInteger();
+        loaders = Executors.newFixedThreadPool(concurrency, runnable -> {
+            Thread thread = new Thread(runnable, "cache-warmer-" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @Scheduled(initialDelayString = "${cache.warmup.initial-delay-ms:0}",
+            fixedDelayString = "${cache.warmup.interval-ms:300000}")
+    public void scheduleWarmUp() {
+        if (enabled && running.compareAndSet(false, true)) {
+            coordinator.execute(() -> {
+                try {
+                    warmUp();
+                } finally {
+                    running.set(false);
+                }
+            });
+        }
+    }
+
+    private void warmUp() {
+        long start = System.currentTimeMillis();
+        int orders = warmAll(hotKeys.hotOrders(topOrders), orderService::warmOrder);
+        int histories = warmAll(hotKeys.hotCustomers(topCustomers), orderService::warmHistory);
+        log.info("Cache warm-up loaded {} orders and {} order histories in {} ms",
+                orders, histories, System.currentTimeMillis() - start);
+    }
+
+    // Returns how many entries had to be loaded from the service
+    private int warmAll(List<String> ids, Predicate<String> warm) {
+        AtomicBoolean stop = new AtomicBoolean();
+        List<Future<Boolean>> loads = new ArrayList<>(ids.size());
+        for (String id : ids) {
+            loads.add(loaders.submit(() -> {
+                // Only warm a service that is fully up; anything else gets the capacity instead
+                if (stop.get()
+                        || healthRegistry.getState(OrderService.ORDER_SERVICE) != ServiceHealthRegistry.State.UP) {
+                    return false;
+                }
+                try {
+                    return warm.test(id);
+                } catch (RuntimeException e) {
+                    if (e instanceof LoadShedException || e.getCause() instanceof LoadShedException) {
+                        // The service is at its limit: leave the rest for the next round
+                        stop.set(true);
+                    } else {
+                        log.debug("Cache warm-up failed for {}", id, e);
+                    }
+                    return false;
+                }
+            }));
+        }
+
+        int loaded = 0;
+        for (Future<Boolean> load : loads) {
+            try {
+                if (load.get()) {
+                    loaded++;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (Exception e) {
+                log.debug("Cache warm-up task failed", e);
+            }
+        }
+        return loaded;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        coordinator.shutdownNow();
+        loaders.shutdownNow();
+    }
+}
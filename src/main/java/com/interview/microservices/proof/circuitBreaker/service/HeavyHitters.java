@@ -0,0 +1,145 @@
+package com.interview.microservices.proof.circuitBreaker.service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Space-Saving top-K sketch. It tracks at most {@code capacity} keys; once full, an unseen key
+ * takes over the slot of the least-counted key and inherits its count, so a count can overstate a
+ * key's frequency by at most what it inherited, and any key seen more than n / capacity times in
+ * n offers is guaranteed to be tracked.
+ *
+ * <p>Keys are split by hash over independently locked stripes, each a sketch of its share of the
+ * capacity, so concurrent offers mostly don't contend. The guarantee then holds per stripe, which
+ * for evenly spread keys is the same bound. Each stripe keeps its keys grouped by count, so finding
+ * the least-counted key doesn't scan the sketch.
+ */
+public class HeavyHitters {
+
+    private static final int MAX_STRIPES = 16;
+
+    private final Stripe[] stripes;
+
+    public HeavyHitters(int capacity) {
+        int stripeCount = Math.max(1, Math.min(MAX_STRIPES, capacity));
+        this.stripes = new Stripe[stripeCount];
+        for (int i = 0; i < stripeCount; i++) {
+            // Spread the remainder so the stripes add up to the full capacity
+            stripes[i] = new Stripe(capacity / stripeCount + (i < capacity % stripeCount ? 1 : 0));
+        }
+    }
+
+    public void offer(String key) {
+        add(key, 1);
+    }
+
+    // Adds counts taken out by drain() back in, e.g. when they couldn't be published
+    public void merge(Map<String, Long> counts) {
+        counts.forEach(this::add);
+    }
+
+    // Up to n keys, most frequent first
+    public List<String> top(int n) {
+        Map<String, Long> candidates = new HashMap<>();
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                candidates.putAll(stripe.top(n));
+            }
+        }
+        return candidates.entrySet().stream()
+                .sorted(Map.Entry.<String, Long>comparingByValue().reversed())
+                .limit(n)
+                .map(Map.Entry::getKey)
+                .collect(ArrayList::new, ArrayList::add, ArrayList::addAll);
+    }
+
+    // Counts gathered since the last drain, most frequent first; the sketch starts over empty
+    public Map<String, Long> drain() {
+        Map<String, Long> counts = new HashMap<>();
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                counts.putAll(stripe.counts);
+                stripe.clear();
+            }
+        }
+        Map<String, Long> drained = new LinkedHashMap<>();
+        counts.entrySet().stream()
+                .sorted(Map.Entry.<String, Long>comparingByValue().reversed())
+                .forEach(entry -> drained.put(entry.getKey(), entry.getValue()));
+        return drained;
+    }
+
+    private void add(String key, long count) {
+        int h = key.hashCode();
+        Stripe stripe = stripes[((h ^ (h >>> 16)) & Integer.MAX_VALUE) % stripes.length];
+        synchronized (stripe) {
+            stripe.add(key, count);
+        }
+    }
+
+    // One Space-Saving sketch; callers hold its lock
+    private static final class Stripe {
+
+        private final int capacity;
+        private final Map<String, Long> counts = new HashMap<>();
+        // Keys by count, oldest first within a count, so the least-counted key is the first entry
+        private final TreeMap<Long, Set<String>> byCount = new TreeMap<>();
+
+        Stripe(int capacity) {
+            this.capacity = capacity;
+        }
+
+        void add(String key, long count) {
+            Long current = counts.get(key);
+            if (current != null) {
+                unlink(key, current);
+                link(key, current + count);
+            } else if (counts.size() < capacity) {
+                link(key, count);
+            } else if (!byCount.isEmpty()) {
+                Map.Entry<Long, Set<String>> min = byCount.firstEntry();
+                String minKey = min.getValue().iterator().next();
+                unlink(minKey, min.getKey());
+                counts.remove(minKey);
+                link(key, min.getKey() + count);
+            }
+        }
+
+        Map<String, Long> top(int n) {
+            Map<String, Long> top = new HashMap<>();
+            for (Map.Entry<Long, Set<String>> entry : byCount.descendingMap().entrySet()) {
+                for (String key : entry.getValue()) {
+                    if (top.size() == n) {
+                        return top;
+                    }
+                    top.put(key, entry.getKey());
+                }
+            }
+            return top;
+        }
+
+        void clear() {
+            counts.clear();
+            byCount.clear();
+        }
+
+        private void link(String key, long count) {
+            counts.put(key, count);
+            byCount.computeIfAbsent(count, c -> new LinkedHashSet<>()).add(key);
+        }
+
+        private void unlink(String key, long count) {
+            Set<String> keys = byCount.get(count);
+            keys.remove(key);
+            if (keys.isEmpty()) {
+                byCount.remove(count);
+            }
+        }
+    }
+}
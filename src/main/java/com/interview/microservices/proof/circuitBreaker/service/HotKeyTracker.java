@@ -0,0 +1,129 @@
+package com.interview.microservices.proof.circuitBreaker.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.zset.Aggregate;
+import org.springframework.data.redis.connection.zset.Weights;
+import org.springframework.data.redis.core.DefaultTypedTuple;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+// Tracks the most requested order and customer IDs for cache warming. Each instance counts in a
+// top-K sketch and periodically merges it into a shared ranking in Redis, so a freshly started
+// instance knows what to warm before it has seen any traffic of its own. The shared ranking decays
+// once per publish interval, whichever instance gets to it first, not once per instance.
+@Component
+@Slf4j
+public class HotKeyTracker {
+
+    // Hash tags keep each ranking and its temporary per-instance keys in one cluster slot
+    private static final String ORDERS_KEY = "{warmup:orders}";
+    private static final String CUSTOMERS_KEY = "{warmup:customers}";
+    // Weight of the existing ranking once per interval, so it follows shifting traffic
+    private static final double DECAY = 0.5;
+
+    @Autowired
+    private RedisTemplate<String, Object> redisTemplate;
+
+    private final int trackedKeys;
+    private final long publishIntervalMs;
+    private final HeavyHitters orders;
+    private final HeavyHitters customers;
+    private final String instanceId = UUID.randomUUID().toString();
+
+    public HotKeyTracker(@Value("${cache.warmup.tracked-keys:1000}") int trackedKeys,
+                         @Value("${cache.warmup.publish-interval-ms:60000}") long publishIntervalMs) {
+        this.trackedKeys = trackedKeys;
+        this.publishIntervalMs = publishIntervalMs;
+        this.orders = new HeavyHitters(trackedKeys);
+        this.customers = new HeavyHitters(trackedKeys);
+    }
+
+    public void recordOrder(String orderId) {
+        orders.offer(orderId);
+    }
+
+    public void recordCustomer(String customerId) {
+        customers.offer(customerId);
+    }
+
+    public List<String> hotOrders(int n) {
+        return hot(orders, ORDERS_KEY, n);
+    }
+
+    public List<String> hotCustomers(int n) {
+        return hot(customers, CUSTOMERS_KEY, n);
+    }
+
+    @Scheduled(fixedDelayString = "${cache.warmup.publish-interval-ms:60000}")
+    public void publish() {
+        publish(orders, ORDERS_KEY);
+        publish(customers, CUSTOMERS_KEY);
+    }
+
+    // Local keys first, as they reflect the latest traffic, then the shared ranking
+    private List<String> hot(HeavyHitters sketch, String key, int n) {
+        Set<String> ids = new LinkedHashSet<>(sketch.top(n));
+        try {
+            Set<Object> shared = redisTemplate.opsForZSet().reverseRange(key, 0, n - 1);
+            if (shared != null) {
+                shared.forEach(id -> ids.add(String.valueOf(id)));
+            }
+        } catch (Exception e) {
+            log.warn("Failed to read shared hot keys from {}", key, e);
+        }
+        return ids.stream().limit(n).toList();
+    }
+
+    // Adds what we've counted since the last publish to the shared ranking, decaying the old scores
+    // if no instance has yet this interval, and trims it back to the tracked size; all merging
+    // happens server-side. Counts that didn't make it into the ranking go back into the sketch.
+    private void publish(HeavyHitters sketch, String key) {
+        Map<String, Long> counts = sketch.drain();
+        if (counts.isEmpty()) {
+            return;
+        }
+
+        String local = key + ":" + instanceId;
+        Set<ZSetOperations.TypedTuple<Object>> tuples = new HashSet<>();
+        counts.forEach((id, count) -> tuples.add(new DefaultTypedTuple<>(id, count.doubleValue())));
+        boolean merged = false;
+        try {
+            ZSetOperations<String, Object> zSet = redisTemplate.opsForZSet();
+            // Left over if an earlier publish failed part way; its counts were put back in the sketch
+            redisTemplate.delete(local);
+            zSet.add(local, tuples);
+            double weight = claimDecay(key) ? DECAY : 1;
+            zSet.unionAndStore(key, List.of(local), key, Aggregate.SUM, Weights.of(weight, 1));
+            merged = true;
+            zSet.removeRange(key, 0, -(trackedKeys + 1L));
+            redisTemplate.delete(local);
+            log.debug("Published {} hot keys to {}", counts.size(), key);
+        } catch (Exception e) {
+            if (!merged) {
+                sketch.merge(counts);
+            }
+            log.warn("Failed to publish hot keys to {}", key, e);
+        }
+    }
+
+    // Whether this instance is the one to decay the ranking in the current interval: the first to
+    // set the interval's epoch key wins, and the key expires once the interval is long over
+    private boolean claimDecay(String key) {
+        long epoch = System.currentTimeMillis() / publishIntervalMs;
+        Boolean claimed = redisTemplate.opsForValue().setIfAbsent(key + ":decay:" + epoch, instanceId,
+                Duration.ofMillis(2 * publishIntervalMs));
+        return Boolean.TRUE.equals(claimed);
+    }
+}
@@ -0,0 +1,10 @@
+package com.interview.microservices.proof.circuitBreaker.service;
+
+// Thrown when a downstream call is turned away by the concurrency limiter; no stack trace, as it's
+// expected and cheap to raise under load
+public class LoadShedException extends RuntimeException {
+
+    public LoadShedException(String service, int limit) {
+        super("Load shed: " + service + " is at its concurrency limit of " + limit, null, false, false);
+    }
+}
@@ -6,23 +6,45 @@ package com.interview.microservices.proof.circuitBreaker.service;
 
 import com.interview.microservices.proof.circuitBreaker.config.dto.ApiResponse;
 import com.interview.microservices.proof.circuitBreaker.config.dto.Order;
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
 import io.github.resilience4j.circuitbreaker.annotation.CircuitBreaker;
 import io.github.resilience4j.timelimiter.annotation.TimeLimiter;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
 import org.springframework.retry.annotation.Backoff;
 import org.springframework.retry.annotation.Retryable;
 import org.springframework.stereotype.Service;
 
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 
 @Service
 @Slf4j
 public class OrderService {
 
+    // Name of the downstream for the circuit breaker, the health registry and load shedding
+    public static final String ORDER_SERVICE = "orderService";
+
     @Autowired
     private ExternalOrderService externalService;
 
@@ -35,27 +57,58 @@ public class OrderService {
     @Autowired
     private io.github.resilience4j.timelimiter.TimeLimiter timeLimiter;
 
+    // Holds the breaker behind @CircuitBreaker(name = "orderService"), which background refreshes also go through
+    @Autowired
+    private CircuitBreakerRegistry circuitBreakerRegistry;
+
+    @Autowired
+    @Qualifier("orderServiceExecutor")
+    private ExecutorService orderServiceExecutor;
+
+    @Autowired
+    private ServiceHealthRegistry healthRegistry;
+
+    @Autowired
+    private AdaptiveConcurrencyLimiter concurrencyLimiter;
+
+    @Autowired
+    private HotKeyTracker hotKeys;
+
+    @Autowired
+    private RequestHedger orderHedger;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    // Our own proxy, so lookups that miss the stale-while-revalidate cache still go through the circuit breaker
+    @Autowired
+    @Lazy
+    private OrderService self;
+
+    @Value("${cache.swr.enabled:true}")
+    private boolean staleWhileRevalidate;
+
+    @Value("${cache.swr.soft-ttl-seconds:30}")
+    private long softTtlSeconds;
+
+    @Value("${cache.swr.hard-ttl-seconds:300}")
+    private long hardTtlSeconds;
+
+    private final SingleFlight<Order> orderFlights = new SingleFlight<>();
+    private final SingleFlight<List<Order>> historyFlights = new SingleFlight<>();
+
+    // order.responses counters by operation and source (LIVE / CACHE / FALLBACK)
+    private final ConcurrentMap<String, Counter> responseCounters = new ConcurrentHashMap<>();
+
     // Method 1: Circuit Breaker with Cache Fallback
     @CircuitBreaker(name = "orderService", fallbackMethod = "fallbackOrderDetails")
     @TimeLimiter(name = "orderService")
     @Retryable(value = {Exception.class}, maxAttempts = 3, backoff = @Backoff(delay = 1000))
     public CompletableFuture<ApiResponse<Order>> getOrderDetailsWithCircuitBreaker(String orderId) {
-        return CompletableFuture.supplyAsync(() -> {
-            try {
-                log.info("Attempting to fetch order details for: {}", orderId);
-                Order order = externalService.getOrderDetails(orderId);
-
-                // Cache successful response
-                cacheService.cacheOrder(orderId, order);
-                cacheService.updateServiceHealth("orderService", true);
-
-                return ApiResponse.success(order, "LIVE");
-            } catch (Exception e) {
-                log.error("External service call failed for order: {}", orderId, e);
-                cacheService.updateServiceHealth("orderService", false);
-                throw new RuntimeException("Service call failed", e);
-            }
-        });
+        // Concurrent lookups of the same order share one downstream call and one cache write;
+        // over the concurrency limit the call is shed and the fallback answers instead
+        return orderFlights.execute(orderId, () -> fetchAndCacheOrderAsync(orderId))
+                .thenApply(order -> counted("details", ApiResponse.success(order, "LIVE")));
     }
 
     // Fallback method for Circuit Breaker
@@ -67,50 +120,86 @@ public class OrderService {
         if (cachedOrder != null) {
             log.info("Returning cached order for: {}", orderId);
             return CompletableFuture.completedFuture(
-                    ApiResponse.success(cachedOrder, "CACHE")
+                    counted("details", ApiResponse.success(cachedOrder, "CACHE"))
             );
         }
 
         // Return default order as last resort
         Order defaultOrder = Order.defaultOrder(orderId);
         log.info("Returning default order for: {}", orderId);
-        return CompletableFuture.completedFuture(
-                ApiResponse.fallback(defaultOrder, "Service temporarily unavailable. Default response provided.")
+        return CompletableFuture.completedFuture(counted("details",
+                ApiResponse.fallback(defaultOrder, "Service temporarily unavailable. Default response provided."))
         );
     }
 
+    // Method 1b: Stale-while-revalidate in front of Method 1 - a fresh cached order is served as is,
+    // a stale one is served while it's refreshed in the background, and only past the hard TTL
+    // does the caller wait for the live service
+    public CompletableFuture<ApiResponse<Order>> getOrderDetailsWithStaleWhileRevalidate(String orderId) {
+        hotKeys.recordOrder(orderId);
+        if (staleWhileRevalidate) {
+            CacheService.CachedEntry<Order> cached = cacheService.getOrderEntry(orderId);
+            String source = cachedSource(cached);
+            if (source != null) {
+                if ("STALE".equals(source)) {
+                    refreshOrder(orderId);
+                }
+                return CompletableFuture.completedFuture(
+                        counted("details", ApiResponse.success(cached.value(), source)));
+            }
+        }
+        return self.getOrderDetailsWithCircuitBreaker(orderId);
+    }
+
     // Method 2: Manual Fallback with Health Check
     public ApiResponse<Order> getOrderDetailsWithManualFallback(String orderId) {
+        hotKeys.recordOrder(orderId);
         try {
             // Check service health first
-            if (!cacheService.isServiceHealthy("orderService")) {
+            if (!healthRegistry.isHealthy(ORDER_SERVICE)) {
                 log.warn("Service is marked as unhealthy, using fallback for order: {}", orderId);
-                return getFallbackOrderResponse(orderId);
+                return counted("manual", getFallbackOrderResponse(orderId));
             }
 
-            // Attempt service call
-            Order order = externalService.getOrderDetails(orderId);
-
-            // Cache successful response
-            cacheService.cacheOrder(orderId, order);
-            cacheService.updateServiceHealth("orderService", true);
+            // Attempt service call, joining any lookup of the same order already in flight
+            Order order = orderFlights.execute(orderId,
+                    () -> CompletableFuture.completedFuture(limited(() -> fetchAndCacheOrder(orderId)))).join();
 
-            return ApiResponse.success(order, "LIVE");
+            return counted("manual", ApiResponse.success(order, "LIVE"));
 
         } catch (Exception e) {
+            if (isShed(e)) {
+                // The service isn't failing, we're just not adding to its load
+                log.debug("Order service at its concurrency limit, using fallback for order: {}", orderId);
+                return counted("manual", getFallbackOrderResponse(orderId));
+            }
             log.error("Service call failed for order: {}, falling back", orderId, e);
-            cacheService.updateServiceHealth("orderService", false);
-            return getFallbackOrderResponse(orderId);
+            return counted("manual", getFallbackOrderResponse(orderId));
         }
     }
 
     // Method 3: Tiered Fallback Strategy
     public ApiResponse<List<Order>> getOrderHistoryWithTieredFallback(String customerId) {
+        hotKeys.recordCustomer(customerId);
+        // Tier 0: Serve cached history that is still within the hard TTL, refreshing it once stale
+        if (staleWhileRevalidate) {
+            CacheService.CachedEntry<Object> cached = cacheService.getFallbackEntry("history:" + customerId);
+            String source = cachedSource(cached);
+            @SuppressWarnings("unchecked")
+            List<Order> cachedOrders = source != null ? (List<Order>) cached.value() : null;
+            if (cachedOrders != null && !cachedOrders.isEmpty()) {
+                if ("STALE".equals(source)) {
+                    refreshHistory(customerId);
+                }
+                return counted("history", ApiResponse.success(cachedOrders, source));
+            }
+        }
+
         // Tier 1: Try live service
         try {
-            List<Order> orders = externalService.getOrderHistory(customerId);
-            cacheService.cacheFallbackResponse("history:" + customerId, orders);
-            return ApiResponse.success(orders, "LIVE");
+            List<Order> orders = historyFlights.execute(customerId,
+                    () -> CompletableFuture.completedFuture(limited(() -> fetchAndCacheHistory(customerId)))).join();
+            return counted("history", ApiResponse.success(orders, "LIVE"));
         } catch (Exception e) {
             log.warn("Live service failed for customer: {}, trying tier 2", customerId, e);
         }
@@ -120,7 +209,7 @@ public class OrderService {
             @SuppressWarnings("unchecked")
             List<Order> cachedOrders = (List<Order>) cacheService.getFallbackResponse("history:" + customerId);
             if (cachedOrders != null && !cachedOrders.isEmpty()) {
-                return ApiResponse.success(cachedOrders, "CACHE");
+                return counted("history", ApiResponse.success(cachedOrders, "CACHE"));
             }
         } catch (Exception e) {
             log.warn("Cache retrieval failed for customer: {}, trying tier 3", customerId, e);
@@ -130,7 +219,272 @@ public class OrderService {
         List<Order> defaultOrders = Arrays.asList(
                 new Order("UNKNOWN", customerId, "No recent orders", 0.0, "UNAVAILABLE", LocalDateTime.now())
         );
-        return ApiResponse.fallback(defaultOrders, "Service temporarily unavailable");
+        return counted("history", ApiResponse.fallback(defaultOrders, "Service temporarily unavailable"));
+    }
+
+    // Method 4: Bulk lookup - cache first, misses fetched in parallel and written back in one pipeline
+    public Map<String, ApiResponse<Order>> getOrderDetailsBatch(List<String> orderIds) {
+        List<String> distinctIds = orderIds.stream().distinct().toList();
+        distinctIds.forEach(hotKeys::recordOrder);
+        Map<String, Order> cached = cacheService.getCachedOrders(distinctIds);
+
+        // Misses go through the circuit breaker like single lookups do. The time limit is applied to
+        // the shared lookup itself, so a hung call is cancelled and gives its permit back; the one on
+        // each caller's copy covers joining a lookup started elsewhere without a limit.
+        long timeoutMillis = timeLimiter.getTimeLimiterConfig().getTimeoutDuration().toMillis();
+        Map<String, CompletableFuture<Order>> pending = new LinkedHashMap<>();
+        for (String orderId : distinctIds) {
+            if (!cached.containsKey(orderId)) {
+                pending.put(orderId, orderFlights.execute(orderId, () -> throughBreaker(
+                                () -> hedgedFetch(orderId).orTimeout(timeoutMillis, TimeUnit.MILLISECONDS)))
+                        .orTimeout(timeoutMillis, TimeUnit.MILLISECONDS));
+            }
+        }
+
+        Map<String, Order> fresh = new HashMap<>();
+        Map<String, ApiResponse<Order>> responses = new LinkedHashMap<>();
+        for (String orderId : distinctIds) {
+            Order cachedOrder = cached.get(orderId);
+            if (cachedOrder != null) {
+                responses.put(orderId, ApiResponse.success(cachedOrder, "CACHE"));
+                continue;
+            }
+
+            try {
+                Order order = pending.get(orderId).join();
+                fresh.put(orderId, order);
+                responses.put(orderId, ApiResponse.success(order, "LIVE"));
+            } catch (Exception e) {
+                if (!isShed(e) && !isNotPermitted(e)) {
+                    log.warn("Batch lookup failed for order: {}", orderId, e);
+                }
+                responses.put(orderId, ApiResponse.fallback(Order.defaultOrder(orderId),
+                        "Service temporarily unavailable"));
+            }
+        }
+
+        responses.values().forEach(response -> counted("batch", response));
+        cacheService.cacheOrders(fresh);
+        return responses;
+    }
+
+    // Cache warming: loads the order unless a fresh copy is already cached, and reports whether it
+    // had to call the service. It runs under the concurrency limit but outside the circuit breaker,
+    // so warming can't trip the breaker; shed or failed loads throw.
+    public boolean warmOrder(String orderId) {
+        if ("CACHE".equals(cachedSource(cacheService.getOrderEntry(orderId)))) {
+            return false;
+        }
+        orderFlights.execute(orderId,
+                () -> CompletableFuture.completedFuture(limited(() -> fetchAndCacheOrder(orderId)))).join();
+        return true;
+    }
+
+    public boolean warmHistory(String customerId) {
+        if ("CACHE".equals(cachedSource(cacheService.getFallbackEntry("history:" + customerId)))) {
+            return false;
+        }
+        historyFlights.execute(customerId,
+                () -> CompletableFuture.completedFuture(limited(() -> fetchAndCacheHistory(customerId)))).join();
+        return true;
+    }
+
+    private <T> ApiResponse<T> counted(String operation, ApiResponse<T> response) {
+        String source = response.getSource();
+        responseCounters.computeIfAbsent(operation + ":" + source, key -> Counter.builder("order.responses")
+                        .description("Order responses by where the data came from")
+                        .tag("operation", operation)
+                        .tag("source", source)
+                        .register(meterRegistry))
+                .increment();
+        return response;
+    }
+
+    // CACHE within the soft TTL, STALE up to the hard TTL or when the age isn't known, null once expired
+    private String cachedSource(CacheService.CachedEntry<?> cached) {
+        if (cached == null || cached.value() == null) {
+            return null;
+        }
+        Duration age = cached.age();
+        if (age != null && age.getSeconds() < softTtlSeconds) {
+            return "CACHE";
+        }
+        return age == null || age.getSeconds() < hardTtlSeconds ? "STALE" : null;
+    }
+
+    // Background refreshes join any lookup of the same key already in flight, and are skipped
+    // while the order breaker is open so stale hits don't keep calling a failing service
+    private void refreshOrder(String orderId) {
+        orderFlights.execute(orderId, () -> throughBreaker(() -> fetchAndCacheOrderAsync(orderId)))
+                .whenComplete((order, ex) -> {
+                    if (isNotPermitted(ex)) {
+                        log.debug("Order breaker is open, not refreshing order: {}", orderId);
+                    }
+                });
+    }
+
+    private void refreshHistory(String customerId) {
+        historyFlights.execute(customerId,
+                        () -> throughBreaker(() -> limitedAsync(() -> fetchAndCacheHistory(customerId))))
+                .whenComplete((orders, ex) -> {
+                    if (isNotPermitted(ex)) {
+                        log.debug("Order breaker is open, not refreshing history of customer: {}", customerId);
+                    } else if (ex != null && !isShed(ex)) {
+                        log.warn("Background refresh failed for customer: {}", customerId, ex);
+                    }
+                });
+    }
+
+    // Runs an async call under the "orderService" breaker the way @CircuitBreaker would: refused
+    // with CallNotPermittedException while it's open, and its outcome counted towards the breaker.
+    // Shed calls never reached the service, so they give their permission back uncounted.
+    private <T> CompletableFuture<T> throughBreaker(Supplier<CompletableFuture<T>> call) {
+        io.github.resilience4j.circuitbreaker.CircuitBreaker breaker =
+                circuitBreakerRegistry.circuitBreaker(ORDER_SERVICE);
+        if (!breaker.tryAcquirePermission()) {
+            return CompletableFuture.failedFuture(CallNotPermittedException.createCallNotPermittedException(breaker));
+        }
+        long start = System.nanoTime();
+        CompletableFuture<T> result;
+        try {
+            result = call.get();
+        } catch (RuntimeException e) {
+            if (isShed(e)) {
+                breaker.releasePermission();
+            } else {
+                breaker.onError(System.nanoTime() - start, TimeUnit.NANOSECONDS, e);
+            }
+            return CompletableFuture.failedFuture(e);
+        }
+        return result.whenComplete((value, ex) -> {
+            Throwable cause = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+            if (cause == null) {
+                breaker.onSuccess(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            } else if (isShed(cause)) {
+                breaker.releasePermission();
+            } else {
+                breaker.onError(System.nanoTime() - start, TimeUnit.NANOSECONDS, cause);
+            }
+        });
+    }
+
+    // Runs a downstream call under the adaptive concurrency limit, or throws LoadShedException
+    private <T> T limited(Supplier<T> call) {
+        return callWithPermit(acquirePermit(), call);
+    }
+
+    // As limited(), on the order executor; the permit is taken up front so shed calls never queue.
+    // Cancelling the returned future interrupts the call, which is how a hedging loser is stopped.
+    private <T> CompletableFuture<T> limitedAsync(Supplier<T> call) {
+        AdaptiveConcurrencyLimiter.Permit permit = acquirePermit();
+        CompletableFuture<T> result = new CompletableFuture<>();
+        Future<?> task;
+        try {
+            task = orderServiceExecutor.submit(() -> {
+                try {
+                    result.complete(callWithPermit(permit, call));
+                } catch (Throwable e) {
+                    result.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            permit.release(false);
+            throw e;
+        }
+        result.whenComplete((value, ex) -> {
+            if (result.isCancelled()) {
+                task.cancel(true);
+                // The task may never have started; releasing twice is a no-op
+                permit.release(false);
+            }
+        });
+        return result;
+    }
+
+    // One lookup, with a second concurrent attempt if the first is slower than usual
+    private CompletableFuture<Order> hedgedFetch(String orderId) {
+        return orderHedger.execute(() -> limitedAsync(() -> fetchOrder(orderId)));
+    }
+
+    // Caching happens once, on the winning attempt
+    private CompletableFuture<Order> fetchAndCacheOrderAsync(String orderId) {
+        log.info("Attempting to fetch order details for: {}", orderId);
+        return hedgedFetch(orderId).whenComplete((order, ex) -> {
+            if (ex == null) {
+                cacheService.cacheOrder(orderId, order);
+            } else if (!isShed(ex)) {
+                log.error("External service call failed for order: {}", orderId, ex);
+            }
+        });
+    }
+
+    private AdaptiveConcurrencyLimiter.Permit acquirePermit() {
+        AdaptiveConcurrencyLimiter.Permit permit = concurrencyLimiter.tryAcquire();
+        if (permit == null) {
+            throw new LoadShedException(ORDER_SERVICE, concurrencyLimiter.getLimit());
+        }
+        return permit;
+    }
+
+    // Every downstream call ends here, so this is where its outcome feeds the health registry
+    private <T> T callWithPermit(AdaptiveConcurrencyLimiter.Permit permit, Supplier<T> call) {
+        long start = System.nanoTime();
+        boolean success = false;
+        boolean interrupted = false;
+        try {
+            T result = call.get();
+            success = true;
+            return result;
+        } catch (RuntimeException e) {
+            // A cancelled hedge or timed-out call says nothing about the service
+            interrupted = e.getCause() instanceof InterruptedException || Thread.currentThread().isInterrupted();
+            throw e;
+        } finally {
+            permit.release(success);
+            if (!interrupted) {
+                healthRegistry.recordCall(ORDER_SERVICE, System.nanoTime() - start, success);
+            }
+        }
+    }
+
+    private static boolean isShed(Throwable e) {
+        return e instanceof LoadShedException || e.getCause() instanceof LoadShedException;
+    }
+
+    private static boolean isNotPermitted(Throwable e) {
+        return e instanceof CallNotPermittedException || e != null && e.getCause() instanceof CallNotPermittedException;
+    }
+
+    private Order fetchOrder(String orderId) {
+        try {
+            return externalService.getOrderDetails(orderId);
+        } catch (Exception e) {
+            throw new RuntimeException("Service call failed", e);
+        }
+    }
+
+    private Order fetchAndCacheOrder(String orderId) {
+        try {
+            log.info("Attempting to fetch order details for: {}", orderId);
+            Order order = externalService.getOrderDetails(orderId);
+
+            // Cache successful response
+            cacheService.cacheOrder(orderId, order);
+            return order;
+        } catch (Exception e) {
+            log.error("External service call failed for order: {}", orderId, e);
+            throw new RuntimeException("Service call failed", e);
+        }
+    }
+
+    private List<Order> fetchAndCacheHistory(String customerId) {
+        try {
+            List<Order> orders = externalService.getOrderHistory(customerId);
+            cacheService.cacheFallbackResponse("history:" + customerId, orders);
+            return orders;
+        } catch (Exception e) {
+            throw new RuntimeException("Service call failed", e);
+        }
     }
 
     private ApiResponse<Order> getFallbackOrderResponse(String orderId) {
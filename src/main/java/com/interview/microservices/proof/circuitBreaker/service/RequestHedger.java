@@ -0,0 +1,212 @@
+package com.interview.microservices.proof.circuitBreaker.service;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Hedges slow calls: if the first attempt hasn't answered by a live latency percentile, a second
+ * attempt is started, the first one to succeed wins and the other is cancelled. Hedges are paid
+ * for from a budget that every call tops up by a fraction of a hedge, so they can never add more
+ * than that fraction of extra load on the downstream. Hedge timers run on one thread of their own
+ * and are cancelled as soon as the call completes, so calls that finish in time cost no timer task.
+ */
+public class RequestHedger {
+
+    // Latencies kept for the percentile, and how often it's recomputed from them
+    private static final int WINDOW = 1024;
+    private static final int RECOMPUTE_EVERY = 64;
+    private static final int MIN_SAMPLES = 100;
+    // Budget is kept in thousandths of a hedge
+    private static final long HEDGE_COST = 1000;
+
+    private final boolean enabled;
+    private final double percentile;
+    private final long minDelayNanos;
+    private final long depositPerCall;
+    private final long maxBudget;
+
+    private final long[] samples = new long[WINDOW];
+    private long sampleCount; // guarded by samples
+    private volatile long hedgeDelayNanos = Long.MAX_VALUE; // no hedging until enough samples are in
+
+    private final AtomicLong budget;
+    private final LongAdder hedged = new LongAdder();
+    private final LongAdder hedgeWins = new LongAdder();
+    private final ScheduledExecutorService timer;
+    private final LongSupplier clock;
+
+    public RequestHedger(boolean enabled, double percentile, Duration minDelay, double budgetPercent, int maxBurst) {
+        this(enabled, percentile, minDelay, budgetPercent, maxBurst, newTimer(), System::nanoTime);
+    }
+
+    RequestHedger(boolean enabled, double percentile, Duration minDelay, double budgetPercent, int maxBurst,
+                  ScheduledExecutorService timer, LongSupplier clock) {
+        this.enabled = enabled;
+        this.percentile = percentile;
+        this.minDelayNanos = minDelay.toNanos();
+        this.depositPerCall = Math.round(HEDGE_COST * budgetPercent / 100);
+        this.maxBudget = maxBurst * HEDGE_COST;
+        this.budget = new AtomicLong(maxBudget);
+        this.timer = timer;
+        this.clock = clock;
+    }
+
+    private static ScheduledExecutorService newTimer() {
+        ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "order-hedge-timer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // Drop cancelled timers right away instead of keeping them queued until their delay is up
+        timer.setRemoveOnCancelPolicy(true);
+        return timer;
+    }
+
+    /**
+     * Starts an attempt and, if it runs past the hedge delay and the budget allows, a second one.
+     * Attempts must be cancellable and must not block when started, as the hedge is started on the
+     * timer thread; the loser's future is cancelled with interruption. An attempt that fails to start
+     * (e.g. shed by a concurrency limiter) simply means no hedge.
+     */
+    public <T> CompletableFuture<T> execute(Supplier<CompletableFuture<T>> attempt) {
+        CompletableFuture<T> primary = timed(attempt.get());
+        long delay = hedgeDelayNanos;
+        if (!enabled || delay == Long.MAX_VALUE) {
+            return primary;
+        }
+        budget.accumulateAndGet(depositPerCall, (current, deposit) -> Math.min(maxBudget, current + deposit));
+
+        Race<T> race = new Race<>();
+        primary.whenComplete(race::settle);
+
+        AtomicReference<CompletableFuture<T>> hedge = new AtomicReference<>();
+        ScheduledFuture<?> hedgeTimer = timer.schedule(() -> {
+            if (race.result.isDone() || !withdrawHedge()) {
+                return;
+            }
+            race.pending.incrementAndGet();
+            CompletableFuture<T> second;
+            try {
+                second = timed(attempt.get());
+            } catch (RuntimeException e) {
+                budget.accumulateAndGet(HEDGE_COST, (current, refund) -> Math.min(maxBudget, current + refund));
+                race.abandon();
+                return;
+            }
+            hedged.increment();
+            hedge.set(second);
+            second.whenComplete((value, ex) -> {
+                if (race.settle(value, ex)) {
+                    hedgeWins.increment();
+                }
+            });
+            if (race.result.isDone()) {
+                second.cancel(true);
+            }
+        }, delay, TimeUnit.NANOSECONDS);
+
+        // Whoever won, stop the other attempt, or the timer if no hedge was started yet
+        race.result.whenComplete((value, ex) -> {
+            hedgeTimer.cancel(false);
+            primary.cancel(true);
+            CompletableFuture<T> second = hedge.get();
+            if (second != null) {
+                second.cancel(true);
+            }
+        });
+        return race.result;
+    }
+
+    public void shutdown() {
+        timer.shutdownNow();
+    }
+
+    public long getHedged() {
+        return hedged.sum();
+    }
+
+    public long getHedgeWins() {
+        return hedgeWins.sum();
+    }
+
+    public double getHedgeDelayMillis() {
+        long delay = hedgeDelayNanos;
+        return delay == Long.MAX_VALUE ? Double.NaN : delay / 1_000_000.0;
+    }
+
+    private boolean withdrawHedge() {
+        while (true) {
+            long current = budget.get();
+            if (current < HEDGE_COST) {
+                return false;
+            }
+            if (budget.compareAndSet(current, current - HEDGE_COST)) {
+                return true;
+            }
+        }
+    }
+
+    private <T> CompletableFuture<T> timed(CompletableFuture<T> attempt) {
+        long start = clock.getAsLong();
+        attempt.whenComplete((value, ex) -> {
+            // Only successful calls: failures and cancelled losers would skew the percentile
+            if (ex == null) {
+                record(clock.getAsLong() - start);
+            }
+        });
+        return attempt;
+    }
+
+    private void record(long latencyNanos) {
+        long[] sorted = null;
+        synchronized (samples) {
+            samples[(int) (sampleCount++ % WINDOW)] = latencyNanos;
+            if (sampleCount >= MIN_SAMPLES && sampleCount % RECOMPUTE_EVERY == 0) {
+                sorted = Arrays.copyOf(samples, (int) Math.min(sampleCount, WINDOW));
+            }
+        }
+        if (sorted != null) {
+            Arrays.sort(sorted);
+            int index = Math.max(0, (int) Math.ceil(percentile * sorted.length) - 1);
+            hedgeDelayNanos = Math.max(minDelayNanos, sorted[index]);
+        }
+    }
+
+    // Outcome of one hedged call: the first success wins, and it fails only once every attempt has
+    private static final class Race<T> {
+
+        final CompletableFuture<T> result = new CompletableFuture<>();
+        final AtomicInteger pending = new AtomicInteger(1);
+        volatile Throwable failure;
+
+        // Returns true if this attempt's value became the result
+        boolean settle(T value, Throwable ex) {
+            if (ex == null) {
+                return result.complete(value);
+            }
+            failure = ex;
+            if (pending.decrementAndGet() == 0) {
+                result.completeExceptionally(ex);
+            }
+            return false;
+        }
+
+        // A hedge that was counted but could not be started
+        void abandon() {
+            if (pending.decrementAndGet() == 0) {
+                result.completeExceptionally(failure);
+            }
+        }
+    }
+}
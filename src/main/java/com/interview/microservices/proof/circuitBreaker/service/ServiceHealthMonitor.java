@@ -6,32 +6,49 @@ package com.interview.microservices.proof.circuitBreaker.service;
 
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
-import java.util.Random;
-
 @Component
 @Slf4j
 public class ServiceHealthMonitor {
 
+    private static final String PROBE_ORDER_ID = "HEALTH_PROBE";
+
+    @Autowired
+    private ServiceHealthRegistry healthRegistry;
+
     @Autowired
-    private CacheService cacheService;
+    private ExternalOrderService externalService;
+
+    @Value("${order.health.probe.enabled:false}")
+    private boolean probeEnabled;
+
+    // Rolls the call windows over, so health recovers (or lapses) even without traffic
+    @Scheduled(fixedDelayString = "${order.health.evaluate-interval-ms:1000}")
+    public void evaluateServiceHealth() {
+        healthRegistry.evaluate();
+    }
 
-    @Scheduled(fixedDelay = 30000) // Check every 30 seconds
+    // Optional active probe, for when real traffic is too thin to judge by
+    @Scheduled(fixedDelayString = "${order.health.probe.interval-ms:30000}")
     public void monitorServiceHealth() {
-        // This could ping actual services or check metrics
-        boolean isHealthy = checkExternalServiceHealth();
-        cacheService.updateServiceHealth("orderService", isHealthy);
+        if (!probeEnabled) {
+            return;
+        }
+
+        boolean isHealthy;
+        try {
+            externalService.getOrderDetails(PROBE_ORDER_ID);
+            isHealthy = true;
+        } catch (Exception e) {
+            isHealthy = false;
+        }
+        healthRegistry.recordProbe(OrderService.ORDER_SERVICE, isHealthy);
 
         if (!isHealthy) {
             log.warn("External order service is unhealthy");
         }
     }
-
-    private boolean checkExternalServiceHealth() {
-        // Implement actual health check logic
-        // For demo, we'll use a simple random check
-        return new Random().nextBoolean();
-    }
 }
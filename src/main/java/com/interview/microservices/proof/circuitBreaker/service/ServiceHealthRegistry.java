@@ -0,0 +1,273 @@
+package com.interview.microservices.proof.circuitBreaker.service;
+
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * In-process health state per downstream service, so a health check is a volatile read. The state
+ * is the worst of three signals: the circuit breaker's state, the error rate and mean latency of
+ * real calls over a rolling window, and the last active probe if probes are enabled. When there
+ * have been too few calls locally, the state last reported by another instance stands in for the
+ * window, for as long as the window lasts. Local signals are broadcast to the other instances over
+ * Redis pub/sub when they change and again every half window, so a peer's view only stays in force
+ * while that peer keeps reporting it. Peers can only report on services this instance knows.
+ */
+@Service
+@Slf4j
+public class ServiceHealthRegistry {
+
+    public enum State { UP, DEGRADED, DOWN }
+
+    private static final String HEALTH_CHANNEL = "health:state";
+    private static final String SEPARATOR = "|";
+
+    @Autowired
+    private RedisTemplate<String, Object> redisTemplate;
+
+    @Autowired
+    private RedisMessageListenerContainer listenerContainer;
+
+    @Autowired
+    private CircuitBreakerRegistry circuitBreakerRegistry;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${order.health.window-seconds:10}")
+    private int windowSeconds;
+
+    @Value("${order.health.min-calls:5}")
+    private int minCalls;
+
+    @Value("${order.health.error-rate-threshold:0.5}")
+    private double errorRateThreshold;
+
+    @Value("${order.health.slow-call-ms:2000}")
+    private long slowCallMs;
+
+    // Identifies our own broadcasts so we don't take them as a peer's view
+    private final String instanceId = UUID.randomUUID().toString();
+
+    private final ConcurrentMap<String, ServiceHealth> services = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    void init() {
+        listenerContainer.addMessageListener(this::onPeerUpdate, new ChannelTopic(HEALTH_CHANNEL));
+        circuitBreakerRegistry.getAllCircuitBreakers().forEach(this::watch);
+        circuitBreakerRegistry.getEventPublisher().onEntryAdded(event -> watch(event.getAddedEntry()));
+    }
+
+    public boolean isHealthy(String service) {
+        return getState(service) != State.DOWN;
+    }
+
+    public State getState(String service) {
+        ServiceHealth health = services.get(service);
+        return health != null ? health.state : State.UP;
+    }
+
+    public Map<String, State> getStates() {
+        Map<String, State> states = new LinkedHashMap<>();
+        services.forEach((name, health) -> states.put(name, health.state));
+        return states;
+    }
+
+    // One real call to the service; interrupted calls (e.g. cancelled hedges) shouldn't be recorded
+    public void recordCall(String service, long latencyNanos, boolean success) {
+        ServiceHealth health = health(service);
+        health.record(latencyNanos, success);
+        update(health);
+    }
+
+    public void recordProbe(String service, boolean success) {
+        ServiceHealth health = health(service);
+        health.probeState = success ? State.UP : State.DOWN;
+        update(health);
+    }
+
+    // Re-evaluates every service, so windows roll over even when no calls come in
+    public void evaluate() {
+        services.values().forEach(this::update);
+    }
+
+    private void watch(CircuitBreaker circuitBreaker) {
+        ServiceHealth health = health(circuitBreaker.getName());
+        health.circuitState = stateOf(circuitBreaker.getState());
+        update(health);
+        circuitBreaker.getEventPublisher().onStateTransition(event -> {
+            health.circuitState = stateOf(event.getStateTransition().getToState());
+            log.info("Circuit breaker {} moved {}", event.getCircuitBreakerName(), event.getStateTransition());
+            update(health);
+        });
+    }
+
+    private ServiceHealth health(String service) {
+        return services.computeIfAbsent(service, name -> {
+            ServiceHealth health = new ServiceHealth(name, windowSeconds);
+            Gauge.builder("service.health.state", health, h -> h.state.ordinal())
+                    .description("Health of a downstream service: 0 up, 1 degraded, 2 down")
+                    .tag("service", name)
+                    .register(meterRegistry);
+            return health;
+        });
+    }
+
+    private void update(ServiceHealth health) {
+        synchronized (health) {
+            State window = health.windowState(minCalls, errorRateThreshold, TimeUnit.MILLISECONDS.toNanos(slowCallMs));
+            State signals = worst(health.circuitState, health.probeState);
+            State local = worst(signals, window != null ? window : State.UP);
+            State peer = health.peerState(TimeUnit.SECONDS.toNanos(windowSeconds));
+            State effective = window == null && peer != null ? worst(signals, peer) : local;
+
+            if (health.state != effective) {
+                log.info("Service {} is now {} (was {})", health.name, effective, health.state);
+                health.state = effective;
+            }
+            // Only our own signals go out; re-broadcasting what peers told us would echo between instances
+            long now = System.nanoTime();
+            if (health.published != local || now - health.publishedAt >= TimeUnit.SECONDS.toNanos(windowSeconds) / 2) {
+                health.published = local;
+                health.publishedAt = now;
+                publish(health.name, local);
+            }
+        }
+    }
+
+    private void publish(String service, State state) {
+        try {
+            redisTemplate.convertAndSend(HEALTH_CHANNEL,
+                    instanceId + SEPARATOR + service + SEPARATOR + state.ordinal());
+        } catch (Exception e) {
+            log.warn("Failed to publish health of {}", service, e);
+        }
+    }
+
+    private void onPeerUpdate(Message message, byte[] pattern) {
+        Object body = redisTemplate.getValueSerializer().deserialize(message.getBody());
+        if (!(body instanceof String payload) || payload.startsWith(instanceId + SEPARATOR)) {
+            return;
+        }
+
+        String[] parts = payload.split("\\" + SEPARATOR);
+        if (parts.length != 3) {
+            return;
+        }
+        // Only services we already track, so a stray name can't register gauges
+        ServiceHealth health = services.get(parts[1]);
+        if (health == null) {
+            return;
+        }
+        try {
+            health.reportPeer(State.values()[Integer.parseInt(parts[2])]);
+            update(health);
+        } catch (RuntimeException e) {
+            log.warn("Ignoring malformed health update: {}", payload);
+        }
+    }
+
+    private static State stateOf(CircuitBreaker.State state) {
+        return switch (state) {
+            case OPEN, FORCED_OPEN -> State.DOWN;
+            case HALF_OPEN -> State.DEGRADED;
+            default -> State.UP;
+        };
+    }
+
+    private static State worst(State a, State b) {
+        return a.ordinal() >= b.ordinal() ? a : b;
+    }
+
+    // Rolling per-second buckets of calls, errors and latency, plus the latest value of each signal
+    private static final class ServiceHealth {
+
+        final String name;
+        private final long[] bucketSecond;
+        private final long[] calls;
+        private final long[] errors;
+        private final long[] latencyNanos;
+
+        volatile State state = State.UP;
+        volatile State circuitState = State.UP;
+        volatile State probeState = State.UP;
+        private volatile State peerState;
+        private volatile long peerStateAt;
+        State published = State.UP; // guarded by this
+        long publishedAt = System.nanoTime(); // guarded by this
+
+        ServiceHealth(String name, int windowSeconds) {
+            this.name = name;
+            bucketSecond = new long[windowSeconds];
+            calls = new long[windowSeconds];
+            errors = new long[windowSeconds];
+            latencyNanos = new long[windowSeconds];
+        }
+
+        void reportPeer(State state) {
+            peerStateAt = System.nanoTime();
+            peerState = state;
+        }
+
+        // What a peer last reported, or null if nothing has been reported within maxAgeNanos
+        State peerState(long maxAgeNanos) {
+            State state = peerState;
+            return state != null && System.nanoTime() - peerStateAt < maxAgeNanos ? state : null;
+        }
+
+        synchronized void record(long latency, boolean success) {
+            long second = TimeUnit.NANOSECONDS.toSeconds(System.nanoTime());
+            int i = (int) Math.floorMod(second, (long) bucketSecond.length);
+            if (bucketSecond[i] != second) {
+                bucketSecond[i] = second;
+                calls[i] = 0;
+                errors[i] = 0;
+                latencyNanos[i] = 0;
+            }
+            calls[i]++;
+            latencyNanos[i] += latency;
+            if (!success) {
+                errors[i]++;
+            }
+        }
+
+        // Null when the window holds too few calls to say anything; callers hold the lock
+        State windowState(int minCalls, double errorRateThreshold, long slowCallNanos) {
+            long second = TimeUnit.NANOSECONDS.toSeconds(System.nanoTime());
+            long totalCalls = 0;
+            long totalErrors = 0;
+            long totalLatency = 0;
+            for (int i = 0; i < bucketSecond.length; i++) {
+                if (second - bucketSecond[i] < bucketSecond.length) {
+                    totalCalls += calls[i];
+                    totalErrors += errors[i];
+                    totalLatency += latencyNanos[i];
+                }
+            }
+            if (totalCalls < minCalls) {
+                return null;
+            }
+            if ((double) totalErrors / totalCalls >= errorRateThreshold) {
+                return State.DOWN;
+            }
+            return totalLatency / totalCalls >= slowCallNanos ? State.DEGRADED : State.UP;
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package com.interview.microservices.proof.circuitBreaker.service;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+
+// Coalesces concurrent calls for the same key into one in-flight call
+public class SingleFlight<V> {
+
+    private final ConcurrentMap<String, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+
+    public CompletableFuture<V> execute(String key, Supplier<CompletableFuture<V>> call) {
+        CompletableFuture<V> flight = new CompletableFuture<>();
+        CompletableFuture<V> existing = inFlight.putIfAbsent(key, flight);
+        if (existing != null) {
+            // Each caller gets its own copy, so one caller timing out can't cancel the others
+            return existing.copy();
+        }
+
+        try {
+            call.get().whenComplete((value, ex) -> {
+                // Leave the map before completing so later callers start a fresh call
+                inFlight.remove(key, flight);
+                if (ex != null) {
+                    flight.completeExceptionally(ex);
+                } else {
+                    flight.complete(value);
+                }
+            });
+        } catch (RuntimeException e) {
+            inFlight.remove(key, flight);
+            flight.completeExceptionally(e);
+        }
+        return flight.copy();
+    }
+}
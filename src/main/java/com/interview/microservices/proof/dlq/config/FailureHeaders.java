@@ -0,0 +1,121 @@
+package com.interview.microservices.proof.dlq.config;
+
+import com.interview.microservices.proof.dlq.model.FailureMetadata;
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.header.Headers;
+
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Header names and mapping for {@link FailureMetadata} on retry and DLQ records.
+ * All values are written as strings so they stay readable in broker tooling; Kafka headers
+ * hold them UTF-8 encoded, AMQP headers as plain strings.
+ */
+public final class FailureHeaders {
+
+    public static final String REASON = "x-dlq-reason";
+    public static final String EXCEPTION_CLASS = "x-dlq-exception-class";
+    public static final String ATTEMPTS = "x-dlq-attempts";
+    public static final String ORIGINAL_TOPIC = "x-dlq-original-topic";
+    public static final String ORIGINAL_PARTITION = "x-dlq-original-partition";
+    public static final String ORIGINAL_OFFSET = "x-dlq-original-offset";
+    public static final String FIRST_FAILURE_AT = "x-dlq-first-failure-at";
+    public static final String LAST_FAILURE_AT = "x-dlq-last-failure-at";
+
+    public static final List<String> NAMES = List.of(REASON, EXCEPTION_CLASS, ATTEMPTS, ORIGINAL_TOPIC,
+            ORIGINAL_PARTITION, ORIGINAL_OFFSET, FIRST_FAILURE_AT, LAST_FAILURE_AT);
+
+    private FailureHeaders() {}
+
+    // Replaces any failure headers already on the record
+    public static void write(FailureMetadata metadata, Headers headers) {
+        toMap(metadata).forEach((name, value) -> {
+            headers.remove(name);
+            headers.add(name, value.getBytes(StandardCharsets.UTF_8));
+        });
+    }
+
+    // Drops the failure history, e.g. from a redriven record that starts its retries over
+    public static void clear(Headers headers) {
+        NAMES.forEach(headers::remove);
+    }
+
+    // Null if the record never failed
+    public static FailureMetadata read(Headers headers) {
+        return read(name -> {
+            Header header = headers.lastHeader(name);
+            return header == null ? null : new String(header.value(), StandardCharsets.UTF_8);
+        });
+    }
+
+    public static Map<String, String> toMap(FailureMetadata metadata) {
+        Map<String, String> values = new LinkedHashMap<>();
+        if (metadata.getReason() != null) {
+            values.put(REASON, metadata.getReason());
+        }
+        if (metadata.getExceptionClass() != null) {
+            values.put(EXCEPTION_CLASS, metadata.getExceptionClass());
+        }
+        values.put(ATTEMPTS, String.valueOf(metadata.getAttempts()));
+        if (metadata.getOriginalTopic() != null) {
+            values.put(ORIGINAL_TOPIC, metadata.getOriginalTopic());
+        }
+        if (metadata.getOriginalPartition() != null) {
+            values.put(ORIGINAL_PARTITION, String.valueOf(metadata.getOriginalPartition()));
+        }
+        if (metadata.getOriginalOffset() != null) {
+            values.put(ORIGINAL_OFFSET, String.valueOf(metadata.getOriginalOffset()));
+        }
+        values.put(FIRST_FAILURE_AT, String.valueOf(metadata.getFirstFailureAt()));
+        values.put(LAST_FAILURE_AT, String.valueOf(metadata.getLastFailureAt()));
+        return values;
+    }
+
+    // AMQP headers (values may arrive as LongString)
+    public static FailureMetadata fromMap(Map<String, ?> headers) {
+        return read(name -> {
+            Object value = headers == null ? null : headers.get(name);
+            return value == null ? null : value.toString();
+        });
+    }
+
+    private static FailureMetadata read(Function<String, String> header) {
+        String firstFailureAt = header.apply(FIRST_FAILURE_AT);
+        if (firstFailureAt == null) {
+            return null;
+        }
+
+        FailureMetadata metadata = new FailureMetadata();
+        metadata.setReason(header.apply(REASON));
+        metadata.setExceptionClass(header.apply(EXCEPTION_CLASS));
+        metadata.setAttempts(parseInt(header.apply(ATTEMPTS), 0));
+        metadata.setOriginalTopic(header.apply(ORIGINAL_TOPIC));
+        String partition = header.apply(ORIGINAL_PARTITION);
+        metadata.setOriginalPartition(partition == null ? null : parseInt(partition, -1));
+        String offset = header.apply(ORIGINAL_OFFSET);
+        metadata.setOriginalOffset(offset == null ? null : parseLong(offset, -1));
+        metadata.setFirstFailureAt(parseLong(firstFailureAt, 0));
+        metadata.setLastFailureAt(parseLong(header.apply(LAST_FAILURE_AT), metadata.getFirstFailureAt()));
+        return metadata;
+    }
+
+    private static int parseInt(String value, int defaultValue) {
+        try {
+            return value == null ? defaultValue : Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    private static long parseLong(String value, long defaultValue) {
+        try {
+            return value == null ? defaultValue : Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+}
@@ -3,16 +3,27 @@ package com.interview.microservices.proof.dlq.config;
 // ===== KAFKA DLQ IMPLEMENTATION =====
 
 import com.interview.microservices.proof.dlq.model.PaymentEvent;
+import com.interview.microservices.proof.dlq.util.KeyOrderedExecutor;
+import com.interview.microservices.proof.dlq.util.OffsetTracker;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.apache.kafka.clients.consumer.ConsumerConfig;
 import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.common.serialization.ByteArrayDeserializer;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+import org.apache.kafka.common.serialization.Serializer;
 import org.apache.kafka.common.serialization.StringDeserializer;
 import org.apache.kafka.common.serialization.StringSerializer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
 import org.springframework.kafka.annotation.EnableKafka;
 import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
 import org.springframework.kafka.core.*;
 import org.springframework.kafka.listener.ContainerProperties;
+import org.springframework.kafka.transaction.KafkaTransactionManager;
+import org.springframework.kafka.support.serializer.DelegatingByTypeSerializer;
 import org.springframework.kafka.support.serializer.JsonDeserializer;
 import org.springframework.kafka.support.serializer.JsonSerializer;
 
@@ -22,47 +33,242 @@ import java.util.Map;
 // 5. Kafka Configuration with DLQ
 @Configuration
 @EnableKafka
+@EnableConfigurationProperties(KafkaProducerProperties.class)
 public class KafkaConfig {
 
     public static final String MAIN_TOPIC = "payment-events";
     public static final String DLQ_TOPIC = "payment-events-dlq";
     public static final String RETRY_TOPIC = "payment-events-retry";
 
+    // Retry ladder: one topic per backoff tier, each drained by its own consumer
+    public static final String RETRY_TOPIC_2S = RETRY_TOPIC + "-2s";
+    public static final String RETRY_TOPIC_4S = RETRY_TOPIC + "-4s";
+    public static final String RETRY_TOPIC_8S = RETRY_TOPIC + "-8s";
+
+    private static final String[] RETRY_TOPICS = {RETRY_TOPIC_2S, RETRY_TOPIC_4S, RETRY_TOPIC_8S};
+    private static final long[] RETRY_DELAYS_MS = {2000, 4000, 8000};
+
+    public static final int MAX_RETRIES = RETRY_TOPICS.length;
+
+    private static final String TRANSACTION_ID_PREFIX = "payment-tx-";
+
+    // Consumer group whose committed offsets are the DLQ redrive checkpoints
+    public static final String REDRIVE_GROUP = "payment-dlq-redrive";
+
+    // Selects which payment-events listener runs: "record" (default), "batch", "parallel" or "exactly-once"
+    public static final String LISTENER_MODE = "${payment.kafka.listener-mode:record}";
+
+    // Retry tier for the given attempt (1-based). Counts outside the ladder, e.g. on records
+    // redriven from the DLQ, fall into the nearest tier instead of failing the send.
+    public static String retryTopic(int attempt) {
+        return RETRY_TOPICS[tier(attempt)];
+    }
+
+    public static long retryDelayMs(int attempt) {
+        return RETRY_DELAYS_MS[tier(attempt)];
+    }
+
+    private static int tier(int attempt) {
+        return Math.min(Math.max(attempt, 1), MAX_RETRIES) - 1;
+    }
+
+    private final KafkaProducerProperties producerProperties;
+    private final MeterRegistry meterRegistry;
+
+    public KafkaConfig(KafkaProducerProperties producerProperties, MeterRegistry meterRegistry) {
+        this.producerProperties = producerProperties;
+        this.meterRegistry = meterRegistry;
+    }
+
     @Bean
+    @Primary
     public ProducerFactory<String, PaymentEvent> producerFactory() {
-        Map<String, Object> config = new HashMap<>();
-        config.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, "localhost:9092");
+        // Batching, compression, acks and idempotence come from the selected producer profile
+        Map<String, Object> config = producerProperties.producerConfig();
         config.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
         config.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, JsonSerializer.class);
-        config.put(ProducerConfig.RETRIES_CONFIG, 3);
-        config.put(ProducerConfig.RETRY_BACKOFF_MS_CONFIG, 1000);
-        return new DefaultKafkaProducerFactory<>(config);
+        return instrumented(new DefaultKafkaProducerFactory<>(config));
     }
 
     @Bean
+    @Primary
     public KafkaTemplate<String, PaymentEvent> kafkaTemplate() {
         return new KafkaTemplate<>(producerFactory());
     }
 
+    // Dead-lettered records are forwarded as the raw bytes they were consumed as
+    @Bean
+    public KafkaTemplate<String, byte[]> deadLetterKafkaTemplate() {
+        Map<String, Object> config = producerProperties.producerConfig();
+        config.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
+        config.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, ByteArraySerializer.class);
+        return new KafkaTemplate<>(instrumented(new DefaultKafkaProducerFactory<>(config)));
+    }
+
+    // Exactly-once pipeline: transactional producer shared by the transaction manager and its template.
+    // It sends both retry events and raw DLQ payloads, which must go out in the same transaction.
+    @Bean
+    public ProducerFactory<String, Object> transactionalProducerFactory() {
+        Map<String, Object> config = producerProperties.producerConfig();
+        config.put(ProducerConfig.ENABLE_IDEMPOTENCE_CONFIG, true);
+        config.put(ProducerConfig.ACKS_CONFIG, "all");
+        Serializer<Object> valueSerializer = new DelegatingByTypeSerializer(Map.of(
+                PaymentEvent.class, new JsonSerializer<PaymentEvent>(),
+                byte[].class, new ByteArraySerializer()));
+        DefaultKafkaProducerFactory<String, Object> factory = instrumented(
+                new DefaultKafkaProducerFactory<>(config, new StringSerializer(), valueSerializer));
+        factory.setTransactionIdPrefix(TRANSACTION_ID_PREFIX);
+        return factory;
+    }
+
+    @Bean
+    public KafkaTemplate<String, Object> transactionalKafkaTemplate() {
+        return new KafkaTemplate<>(transactionalProducerFactory());
+    }
+
+    @Bean
+    public KafkaTransactionManager<String, Object> kafkaTransactionManager() {
+        return new KafkaTransactionManager<>(transactionalProducerFactory());
+    }
+
     @Bean
     public ConsumerFactory<String, PaymentEvent> consumerFactory() {
         Map<String, Object> config = new HashMap<>();
         config.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, "localhost:9092");
         config.put(ConsumerConfig.GROUP_ID_CONFIG, "payment-service");
         config.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class);
-        config.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, JsonDeserializer.class);
+        // Keeps each record's raw payload for the DLQ
+        config.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, PaymentEventDeserializer.class);
         config.put(JsonDeserializer.TRUSTED_PACKAGES, "*");
         config.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "earliest");
         config.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, false);
-        return new DefaultKafkaConsumerFactory<>(config);
+        // Never see retry/DLQ records from aborted exactly-once transactions
+        config.put(ConsumerConfig.ISOLATION_LEVEL_CONFIG, "read_committed");
+        return instrumented(new DefaultKafkaConsumerFactory<>(config));
+    }
+
+    // DLQ redrive: records are read as raw bytes, so only the retry count is rewritten on the way back
+    @Bean
+    public ConsumerFactory<String, byte[]> redriveConsumerFactory(
+            @Value("${payment.redrive.kafka.max-poll-records:1000}") int maxPollRecords) {
+        Map<String, Object> config = new HashMap<>();
+        config.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, "localhost:9092");
+        config.put(ConsumerConfig.GROUP_ID_CONFIG, REDRIVE_GROUP);
+        config.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class);
+        config.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, ByteArrayDeserializer.class);
+        config.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "earliest");
+        config.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, false);
+        config.put(ConsumerConfig.ISOLATION_LEVEL_CONFIG, "read_committed");
+        config.put(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, maxPollRecords);
+        return instrumented(new DefaultKafkaConsumerFactory<>(config));
+    }
+
+    @Bean
+    public KafkaTemplate<String, byte[]> redriveKafkaTemplate() {
+        // Own producer, so a redrive never queues behind (or in front of) live sends in the same buffer
+        Map<String, Object> config = producerProperties.producerConfig();
+        config.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
+        config.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, ByteArraySerializer.class);
+        return new KafkaTemplate<>(instrumented(new DefaultKafkaProducerFactory<>(config)));
     }
 
     @Bean
-    public ConcurrentKafkaListenerContainerFactory<String, PaymentEvent> kafkaListenerContainerFactory() {
+    public ConcurrentKafkaListenerContainerFactory<String, PaymentEvent> kafkaListenerContainerFactory(
+            @Value("${payment.kafka.concurrency:3}") int concurrency) {
         ConcurrentKafkaListenerContainerFactory<String, PaymentEvent> factory =
                 new ConcurrentKafkaListenerContainerFactory<>();
         factory.setConsumerFactory(consumerFactory());
+        factory.setConcurrency(concurrency);
         factory.getContainerProperties().setAckMode(ContainerProperties.AckMode.MANUAL);
         return factory;
     }
+
+    @Bean
+    public ConcurrentKafkaListenerContainerFactory<String, PaymentEvent> batchKafkaListenerContainerFactory(
+            @Value("${payment.kafka.concurrency:3}") int concurrency,
+            @Value("${payment.kafka.batch.max-poll-records:500}") int maxPollRecords) {
+        ConcurrentKafkaListenerContainerFactory<String, PaymentEvent> factory =
+                new ConcurrentKafkaListenerContainerFactory<>();
+        factory.setConsumerFactory(consumerFactory());
+        factory.setConcurrency(concurrency);
+        factory.setBatchListener(true);
+        factory.getContainerProperties().setAckMode(ContainerProperties.AckMode.MANUAL);
+        factory.getContainerProperties().getKafkaConsumerProperties()
+                .setProperty(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, String.valueOf(maxPollRecords));
+        return factory;
+    }
+
+    // Parallel mode: the listener only hands records to the worker lanes; offsets are committed by the
+    // tracker as lanes finish, on every poll and on idle polls while partitions are paused
+    @Bean
+    public ConcurrentKafkaListenerContainerFactory<String, PaymentEvent> parallelKafkaListenerContainerFactory(
+            @Value("${payment.kafka.concurrency:3}") int concurrency,
+            @Value("${payment.kafka.batch.max-poll-records:500}") int maxPollRecords,
+            @Value("${payment.kafka.parallel.commit-interval-ms:1000}") long commitIntervalMs,
+            OffsetTracker paymentOffsetTracker) {
+        ConcurrentKafkaListenerContainerFactory<String, PaymentEvent> factory =
+                new ConcurrentKafkaListenerContainerFactory<>();
+        factory.setConsumerFactory(consumerFactory());
+        factory.setConcurrency(concurrency);
+        factory.setBatchListener(true);
+        factory.getContainerProperties().setAckMode(ContainerProperties.AckMode.MANUAL);
+        factory.getContainerProperties().setIdleEventInterval(commitIntervalMs);
+        factory.getContainerProperties().setConsumerRebalanceListener(paymentOffsetTracker);
+        factory.getContainerProperties().getKafkaConsumerProperties()
+                .setProperty(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, String.valueOf(maxPollRecords));
+        return factory;
+    }
+
+    // One transaction per poll: the offsets of the whole batch and every retry/DLQ record it
+    // produced commit or abort together
+    @Bean
+    public ConcurrentKafkaListenerContainerFactory<String, PaymentEvent> transactionalKafkaListenerContainerFactory(
+            @Value("${payment.kafka.concurrency:3}") int concurrency,
+            @Value("${payment.kafka.batch.max-poll-records:500}") int maxPollRecords) {
+        ConcurrentKafkaListenerContainerFactory<String, PaymentEvent> factory =
+                new ConcurrentKafkaListenerContainerFactory<>();
+        factory.setConsumerFactory(consumerFactory());
+        factory.setConcurrency(concurrency);
+        factory.setBatchListener(true);
+        factory.getContainerProperties().setAckMode(ContainerProperties.AckMode.BATCH);
+        factory.getContainerProperties().setKafkaAwareTransactionManager(kafkaTransactionManager());
+        factory.getContainerProperties().getKafkaConsumerProperties()
+                .setProperty(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, String.valueOf(maxPollRecords));
+        return factory;
+    }
+
+    // Retry tiers in exactly-once mode: one transaction per record
+    @Bean
+    public ConcurrentKafkaListenerContainerFactory<String, PaymentEvent> transactionalRetryContainerFactory(
+            @Value("${payment.kafka.concurrency:3}") int concurrency) {
+        ConcurrentKafkaListenerContainerFactory<String, PaymentEvent> factory =
+                new ConcurrentKafkaListenerContainerFactory<>();
+        factory.setConsumerFactory(consumerFactory());
+        factory.setConcurrency(concurrency);
+        factory.getContainerProperties().setAckMode(ContainerProperties.AckMode.RECORD);
+        factory.getContainerProperties().setKafkaAwareTransactionManager(kafkaTransactionManager());
+        return factory;
+    }
+
+    @Bean(destroyMethod = "shutdown")
+    public KeyOrderedExecutor paymentWorkerPool(@Value("${payment.kafka.parallel.workers:16}") int workers) {
+        return new KeyOrderedExecutor(workers, "payment-worker-");
+    }
+
+    @Bean
+    public OffsetTracker paymentOffsetTracker(
+            @Value("${payment.kafka.parallel.max-pending-per-partition:1000}") int maxPendingPerPartition) {
+        return new OffsetTracker(maxPendingPerPartition);
+    }
+
+    // Kafka client metrics (send latency, per-partition records-lag, ...) exported through Micrometer
+    private <K, V> DefaultKafkaProducerFactory<K, V> instrumented(DefaultKafkaProducerFactory<K, V> factory) {
+        factory.addListener(new MicrometerProducerListener<>(meterRegistry));
+        return factory;
+    }
+
+    private <K, V> DefaultKafkaConsumerFactory<K, V> instrumented(DefaultKafkaConsumerFactory<K, V> factory) {
+        factory.addListener(new MicrometerConsumerListener<>(meterRegistry));
+        return factory;
+    }
 }
@@ -0,0 +1,97 @@
+package com.interview.microservices.proof.dlq.config;
+
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.HashMap;
+import java.util.Map;
+
+// Kafka producer tuning, selected by profile (payment.kafka.producer.*)
+@ConfigurationProperties(prefix = "payment.kafka.producer")
+public class KafkaProducerProperties {
+
+    public static final String LOW_LATENCY = "low-latency";
+    public static final String HIGH_THROUGHPUT = "high-throughput";
+
+    private String bootstrapServers = "localhost:9092";
+    private String profile = HIGH_THROUGHPUT;
+    private Map<String, Profile> profiles = new HashMap<>();
+
+    public KafkaProducerProperties() {
+        profiles.put(LOW_LATENCY, new Profile(0, 16384, "none"));
+        profiles.put(HIGH_THROUGHPUT, new Profile(20, 131072, "lz4"));
+    }
+
+    // Settings of the active profile, as producer config entries
+    public Map<String, Object> producerConfig() {
+        Profile active = profiles.get(profile);
+        if (active == null) {
+            throw new IllegalStateException("Unknown Kafka producer profile: " + profile);
+        }
+
+        Map<String, Object> config = new HashMap<>();
+        config.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
+        config.put(ProducerConfig.ACKS_CONFIG, active.getAcks());
+        config.put(ProducerConfig.ENABLE_IDEMPOTENCE_CONFIG, active.isIdempotence());
+        config.put(ProducerConfig.LINGER_MS_CONFIG, active.getLingerMs());
+        config.put(ProducerConfig.BATCH_SIZE_CONFIG, active.getBatchSize());
+        config.put(ProducerConfig.COMPRESSION_TYPE_CONFIG, active.getCompressionType());
+        config.put(ProducerConfig.MAX_IN_FLIGHT_REQUESTS_PER_CONNECTION, active.getMaxInFlightRequests());
+        config.put(ProducerConfig.RETRIES_CONFIG, active.getRetries());
+        config.put(ProducerConfig.RETRY_BACKOFF_MS_CONFIG, active.getRetryBackoffMs());
+        return config;
+    }
+
+    public String getBootstrapServers() { return bootstrapServers; }
+    public void setBootstrapServers(String bootstrapServers) { this.bootstrapServers = bootstrapServers; }
+
+    public String getProfile() { return profile; }
+    public void setProfile(String profile) { this.profile = profile; }
+
+    public Map<String, Profile> getProfiles() { return profiles; }
+    public void setProfiles(Map<String, Profile> profiles) { this.profiles = profiles; }
+
+    public static class Profile {
+        // Idempotent delivery needs acks=all and at most 5 in-flight requests
+        private String acks = "all";
+        private boolean idempotence = true;
+        private int maxInFlightRequests = 5;
+        private int lingerMs;
+        private int batchSize;
+        private String compressionType;
+        private int retries = 3;
+        private long retryBackoffMs = 1000;
+
+        public Profile() {}
+
+        public Profile(int lingerMs, int batchSize, String compressionType) {
+            this.lingerMs = lingerMs;
+            this.batchSize = batchSize;
+            this.compressionType = compressionType;
+        }
+
+        public String getAcks() { return acks; }
+        public void setAcks(String acks) { this.acks = acks; }
+
+        public boolean isIdempotence() { return idempotence; }
+        public void setIdempotence(boolean idempotence) { this.idempotence = idempotence; }
+
+        public int getMaxInFlightRequests() { return maxInFlightRequests; }
+        public void setMaxInFlightRequests(int maxInFlightRequests) { this.maxInFlightRequests = maxInFlightRequests; }
+
+        public int getLingerMs() { return lingerMs; }
+        public void setLingerMs(int lingerMs) { this.lingerMs = lingerMs; }
+
+        public int getBatchSize() { return batchSize; }
+        public void setBatchSize(int batchSize) { this.batchSize = batchSize; }
+
+        public String getCompressionType() { return compressionType; }
+        public void setCompressionType(String compressionType) { this.compressionType = compressionType; }
+
+        public int getRetries() { return retries; }
+        public void setRetries(int retries) { this.retries = retries; }
+
+        public long getRetryBackoffMs() { return retryBackoffMs; }
+        public void setRetryBackoffMs(long retryBackoffMs) { this.retryBackoffMs = retryBackoffMs; }
+    }
+}
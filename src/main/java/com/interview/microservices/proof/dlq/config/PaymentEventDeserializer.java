@@ -0,0 +1,35 @@
+package com.interview.microservices.proof.dlq.config;
+
+import com.interview.microservices.proof.dlq.model.PaymentEvent;
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.header.Headers;
+import org.springframework.kafka.support.serializer.JsonDeserializer;
+
+/**
+ * JSON deserializer for payment events that also keeps the bytes each event was read from, in a
+ * header that only exists on the consumer side. A payment that fails for good is dead-lettered
+ * with exactly those bytes instead of a re-serialized (and by then modified) event.
+ */
+public class PaymentEventDeserializer extends JsonDeserializer<PaymentEvent> {
+
+    public static final String RAW_VALUE = "x-payment-raw-value";
+
+    @Override
+    public PaymentEvent deserialize(String topic, Headers headers, byte[] data) {
+        PaymentEvent event = super.deserialize(topic, headers, data);
+        if (data != null) {
+            headers.remove(RAW_VALUE);
+            headers.add(RAW_VALUE, data);
+        }
+        return event;
+    }
+
+    // The payload as consumed; fails if the record wasn't read through this deserializer
+    public static byte[] rawValue(Headers headers) {
+        Header header = headers.lastHeader(RAW_VALUE);
+        if (header == null) {
+            throw new IllegalStateException("Record has no " + RAW_VALUE + " header");
+        }
+        return header.value();
+    }
+}
@@ -4,12 +4,18 @@ package com.interview.microservices.proof.dlq.config;
 
 import org.springframework.amqp.core.*;
 import org.springframework.amqp.rabbit.annotation.EnableRabbit;
+import org.springframework.amqp.rabbit.config.SimpleRabbitListenerContainerFactory;
 import org.springframework.amqp.rabbit.connection.ConnectionFactory;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
 import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
+import org.springframework.amqp.support.converter.MessageConverter;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import java.util.ArrayList;
+import java.util.List;
+
 // 1. Configuration for RabbitMQ DLQ
 @Configuration
 @EnableRabbit
@@ -19,6 +25,30 @@ public class RabbitMQConfig {
     public static final String DLQ_QUEUE = "payment.dlq";
     public static final String DLX_EXCHANGE = "dlx.payments";
     public static final String MAIN_EXCHANGE = "payments.exchange";
+    public static final String MAIN_ROUTING_KEY = "payment.process";
+    public static final String DLQ_ROUTING_KEY = "payment.failed";
+    // Copies of what the DLQ listener took off payment.dlq, kept for redrive, which the listener
+    // would otherwise race for the same messages
+    public static final String DLQ_ARCHIVE_QUEUE = "payment.dlq.archive";
+    public static final String DLQ_ARCHIVE_ROUTING_KEY = "payment.archived";
+
+    // Retry tiers: TTL wait queues without consumers that dead-letter back to the main exchange
+    public static final String RETRY_EXCHANGE = "payments.retry";
+    private static final long[] RETRY_DELAYS_MS = {2000, 4000, 8000};
+    public static final int MAX_RETRIES = RETRY_DELAYS_MS.length;
+
+    // Routing key (and wait queue name) for the given retry attempt (1-based); counts outside the
+    // ladder fall into the nearest tier
+    public static String retryRoutingKey(int attempt) {
+        return "payment.retry." + retryDelayMs(attempt) / 1000 + "s";
+    }
+
+    public static long retryDelayMs(int attempt) {
+        return RETRY_DELAYS_MS[Math.min(Math.max(attempt, 1), MAX_RETRIES) - 1];
+    }
+
+    // Selects which payment.queue listener runs: "record" (default) or "batch"
+    public static final String LISTENER_MODE = "${payment.rabbit.listener-mode:record}";
 
     @Bean
     public DirectExchange mainExchange() {
@@ -34,7 +64,7 @@ public class RabbitMQConfig {
     public Queue mainQueue() {
         return QueueBuilder.durable(MAIN_QUEUE)
                 .withArgument("x-dead-letter-exchange", DLX_EXCHANGE)
-                .withArgument("x-dead-letter-routing-key", "payment.failed")
+                .withArgument("x-dead-letter-routing-key", DLQ_ROUTING_KEY)
                 .withArgument("x-message-ttl", 60000) // 1 minute TTL
                 .build();
     }
@@ -44,26 +74,89 @@ public class RabbitMQConfig {
         return QueueBuilder.durable(DLQ_QUEUE).build();
     }
 
+    @Bean
+    public Queue dlqArchiveQueue() {
+        return QueueBuilder.durable(DLQ_ARCHIVE_QUEUE).build();
+    }
+
     @Bean
     public Binding mainBinding() {
         return BindingBuilder.bind(mainQueue())
                 .to(mainExchange())
-                .with("payment.process");
+                .with(MAIN_ROUTING_KEY);
+    }
+
+    @Bean
+    public Declarables retryTopology() {
+        DirectExchange retryExchange = new DirectExchange(RETRY_EXCHANGE);
+        List<Declarable> declarables = new ArrayList<>();
+        declarables.add(retryExchange);
+
+        for (int attempt = 1; attempt <= MAX_RETRIES; attempt++) {
+            String routingKey = retryRoutingKey(attempt);
+            Queue waitQueue = QueueBuilder.durable(routingKey)
+                    .withArgument("x-message-ttl", retryDelayMs(attempt))
+                    .withArgument("x-dead-letter-exchange", MAIN_EXCHANGE)
+                    .withArgument("x-dead-letter-routing-key", MAIN_ROUTING_KEY)
+                    .build();
+            declarables.add(waitQueue);
+            declarables.add(BindingBuilder.bind(waitQueue).to(retryExchange).with(routingKey));
+        }
+        return new Declarables(declarables);
     }
 
     @Bean
     public Binding dlqBinding() {
         return BindingBuilder.bind(dlqQueue())
                 .to(dlxExchange())
-                .with("payment.failed");
+                .with(DLQ_ROUTING_KEY);
+    }
+
+    @Bean
+    public Binding dlqArchiveBinding() {
+        return BindingBuilder.bind(dlqArchiveQueue())
+                .to(dlxExchange())
+                .with(DLQ_ARCHIVE_ROUTING_KEY);
+    }
+
+    // Picked up by Boot's default listener container factory as well
+    @Bean
+    public MessageConverter jsonMessageConverter() {
+        return new Jackson2JsonMessageConverter();
     }
 
     @Bean
     public RabbitTemplate rabbitTemplate(ConnectionFactory connectionFactory) {
         RabbitTemplate template = new RabbitTemplate(connectionFactory);
-        template.setMessageConverter(new Jackson2JsonMessageConverter());
+        template.setMessageConverter(jsonMessageConverter());
+        // Unroutable messages come back as returns instead of being confirmed and dropped
+        template.setMandatory(true);
         return template;
     }
+
+    // High-throughput mode: large prefetch, several consumers, N messages per listener call
+    @Bean
+    public SimpleRabbitListenerContainerFactory batchRabbitListenerContainerFactory(
+            ConnectionFactory connectionFactory,
+            @Value("${payment.rabbit.batch.size:50}") int batchSize,
+            @Value("${payment.rabbit.batch.prefetch:250}") int prefetch,
+            @Value("${payment.rabbit.batch.concurrency:4}") int concurrency,
+            @Value("${payment.rabbit.batch.max-concurrency:8}") int maxConcurrency,
+            @Value("${payment.rabbit.batch.receive-timeout-ms:100}") long receiveTimeout) {
+        SimpleRabbitListenerContainerFactory factory = new SimpleRabbitListenerContainerFactory();
+        factory.setConnectionFactory(connectionFactory);
+        factory.setMessageConverter(jsonMessageConverter());
+        factory.setAcknowledgeMode(AcknowledgeMode.MANUAL);
+        factory.setPrefetchCount(prefetch);
+        factory.setConcurrentConsumers(concurrency);
+        factory.setMaxConcurrentConsumers(maxConcurrency);
+        factory.setBatchListener(true);
+        factory.setConsumerBatchEnabled(true);
+        factory.setBatchSize(batchSize);
+        // Hand over a partial batch rather than waiting for it to fill
+        factory.setReceiveTimeout(receiveTimeout);
+        return factory;
+    }
 }
 
 
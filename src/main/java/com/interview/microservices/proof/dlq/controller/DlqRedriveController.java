@@ -0,0 +1,58 @@
+package com.interview.microservices.proof.dlq.controller;
+
+import com.interview.microservices.proof.dlq.model.RedriveProgress;
+import com.interview.microservices.proof.dlq.model.RedriveRequest;
+import com.interview.microservices.proof.dlq.service.DlqRedriveService;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+
+// DLQ redrive: start, watch and cancel jobs that move dead-lettered payments back to the main topic/exchange
+@RestController
+@RequestMapping("/api/payments/redrive")
+public class DlqRedriveController {
+
+    private final DlqRedriveService redriveService;
+
+    public DlqRedriveController(DlqRedriveService redriveService) {
+        this.redriveService = redriveService;
+    }
+
+    @PostMapping("/{broker}")
+    public ResponseEntity<RedriveProgress> startRedrive(@PathVariable String broker,
+                                                        @RequestBody(required = false) RedriveRequest request) {
+        try {
+            RedriveProgress progress = redriveService.start(broker, request != null ? request : new RedriveRequest());
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(progress);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
+        }
+    }
+
+    @GetMapping
+    public ResponseEntity<List<RedriveProgress>> listRedrives() {
+        return ResponseEntity.ok(redriveService.list());
+    }
+
+    @GetMapping("/jobs/{jobId}")
+    public ResponseEntity<RedriveProgress> getRedrive(@PathVariable String jobId) {
+        RedriveProgress progress = redriveService.progress(jobId);
+        return progress != null ? ResponseEntity.ok(progress) : ResponseEntity.notFound().build();
+    }
+
+    @DeleteMapping("/jobs/{jobId}")
+    public ResponseEntity<RedriveProgress> cancelRedrive(@PathVariable String jobId) {
+        RedriveProgress progress = redriveService.cancel(jobId);
+        return progress != null ? ResponseEntity.ok(progress) : ResponseEntity.notFound().build();
+    }
+}
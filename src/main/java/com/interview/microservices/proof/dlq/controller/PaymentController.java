@@ -1,14 +1,26 @@
 package com.interview.microservices.proof.dlq.controller;
 
+import com.interview.microservices.proof.dlq.model.FailedPayment;
+import com.interview.microservices.proof.dlq.model.FailureCluster;
 import com.interview.microservices.proof.dlq.model.PaymentEvent;
+import com.interview.microservices.proof.dlq.service.DlqAggregationService;
+import com.interview.microservices.proof.dlq.service.FailedPaymentStore;
 import com.interview.microservices.proof.dlq.service.KafkaPaymentProducer;
 import com.interview.microservices.proof.dlq.service.PaymentEventProducer;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+
 // 9. Controller for Testing
 @RestController
 @RequestMapping("/api/payments")
@@ -16,21 +28,28 @@ public class PaymentController {
 
     private final PaymentEventProducer rabbitProducer;
     private final KafkaPaymentProducer kafkaProducer;
+    private final FailedPaymentStore failedPaymentStore;
+    private final DlqAggregationService dlqAggregationService;
+
+    private static final int MAX_FAILED_RESULTS = 1000;
+    private static final int MAX_CLUSTER_RECORDS = 100_000;
 
     public PaymentController(PaymentEventProducer rabbitProducer,
-                             KafkaPaymentProducer kafkaProducer) {
+                             KafkaPaymentProducer kafkaProducer,
+                             FailedPaymentStore failedPaymentStore,
+                             DlqAggregationService dlqAggregationService) {
         this.rabbitProducer = rabbitProducer;
         this.kafkaProducer = kafkaProducer;
+        this.failedPaymentStore = failedPaymentStore;
+        this.dlqAggregationService = dlqAggregationService;
     }
 
     @PostMapping("/rabbit")
-    public ResponseEntity<String> sendRabbitPayment(@RequestBody PaymentEvent event) {
-        try {
-            rabbitProducer.sendPaymentEvent(event);
-            return ResponseEntity.ok("Payment event sent via RabbitMQ");
-        } catch (Exception e) {
-            return ResponseEntity.status(500).body("Failed to send payment event");
-        }
+    public CompletableFuture<ResponseEntity<String>> sendRabbitPayment(@RequestBody PaymentEvent event) {
+        // Completes once the broker has confirmed the message
+        return rabbitProducer.sendPaymentEventAsync(event)
+                .thenApply(confirmed -> ResponseEntity.ok("Payment event sent via RabbitMQ"))
+                .exceptionally(e -> ResponseEntity.status(500).body("Failed to send payment event"));
     }
 
     @PostMapping("/kafka")
@@ -42,4 +61,41 @@ public class PaymentController {
             return ResponseEntity.status(500).body("Failed to send payment event");
         }
     }
+
+    // Dead-lettered payments, newest first; since/until are ISO-8601 instants
+    @GetMapping("/failed")
+    public ResponseEntity<List<FailedPayment>> getFailedPayments(
+            @RequestParam(required = false) String userId,
+            @RequestParam(required = false) Instant since,
+            @RequestParam(required = false) Instant until,
+            @RequestParam(defaultValue = "100") int limit) {
+        int cappedLimit = Math.max(0, Math.min(limit, MAX_FAILED_RESULTS));
+        return ResponseEntity.ok(failedPaymentStore.find(userId, since, until, cappedLimit));
+    }
+
+    @GetMapping("/failed/{paymentId}")
+    public ResponseEntity<FailedPayment> getFailedPayment(@PathVariable String paymentId) {
+        return failedPaymentStore.findByPaymentId(paymentId)
+                .map(ResponseEntity::ok)
+                .orElse(ResponseEntity.notFound().build());
+    }
+
+    // Failure clusters among the newest DLQ entries, grouped by exception, reason or topic from
+    // failure metadata only; completes once the aggregation, which runs off the request thread, is done
+    @GetMapping("/dlq/{broker}/clusters")
+    public CompletableFuture<ResponseEntity<List<FailureCluster>>> getDlqClusters(
+            @PathVariable String broker,
+            @RequestParam(defaultValue = "exception") String groupBy,
+            @RequestParam(defaultValue = "10000") int maxRecords) {
+        int cappedMaxRecords = Math.max(0, Math.min(maxRecords, MAX_CLUSTER_RECORDS));
+        try {
+            return dlqAggregationService.aggregate(broker, groupBy, cappedMaxRecords)
+                    .thenApply(ResponseEntity::ok);
+        } catch (IllegalArgumentException e) {
+            return CompletableFuture.completedFuture(ResponseEntity.badRequest().build());
+        } catch (RejectedExecutionException e) {
+            // Enough aggregations are queued already
+            return CompletableFuture.completedFuture(ResponseEntity.status(503).build());
+        }
+    }
 }
\ No newline at end of file
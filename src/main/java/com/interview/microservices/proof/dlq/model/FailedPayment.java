@@ -0,0 +1,99 @@
+package com.interview.microservices.proof.dlq.model;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.LocalDateTime;
+
+// Dead-lettered payment kept for manual review
+public class FailedPayment {
+    private String paymentId;
+    private String userId;
+    private BigDecimal amount;
+    private String currency;
+    private LocalDateTime timestamp;
+    private int retryCount;
+    private Instant failedAt;
+    private String reason;
+    // Which DLQ it came from and, if the record carried failure headers, why and where it first failed
+    private String broker;
+    private String exceptionClass;
+    private String originalTopic;
+    private int attempts;
+    private Instant firstFailureAt;
+
+    // Constructors
+    public FailedPayment() {}
+
+    public FailedPayment(String broker, PaymentEvent event, FailureMetadata failure, Instant failedAt) {
+        this.paymentId = event.getPaymentId();
+        this.userId = event.getUserId();
+        this.amount = event.getAmount();
+        this.currency = event.getCurrency();
+        this.timestamp = event.getTimestamp();
+        this.retryCount = event.getRetryCount();
+        this.failedAt = failedAt;
+        this.broker = broker;
+        if (failure != null) {
+            this.reason = failure.getReason();
+            this.exceptionClass = failure.getExceptionClass();
+            this.originalTopic = failure.getOriginalTopic();
+            this.attempts = failure.getAttempts();
+            this.firstFailureAt = Instant.ofEpochMilli(failure.getFirstFailureAt());
+        }
+    }
+
+    // The failure headers it was dead-lettered with, as far as they were kept; null if it had none
+    public FailureMetadata toFailureMetadata() {
+        if (firstFailureAt == null) {
+            return null;
+        }
+        FailureMetadata failure = new FailureMetadata();
+        failure.setReason(reason);
+        failure.setExceptionClass(exceptionClass);
+        failure.setOriginalTopic(originalTopic);
+        failure.setAttempts(attempts);
+        failure.setFirstFailureAt(firstFailureAt.toEpochMilli());
+        failure.setLastFailureAt(failedAt.toEpochMilli());
+        return failure;
+    }
+
+    // Getters and Setters
+    public String getPaymentId() { return paymentId; }
+    public void setPaymentId(String paymentId) { this.paymentId = paymentId; }
+
+    public String getUserId() { return userId; }
+    public void setUserId(String userId) { this.userId = userId; }
+
+    public BigDecimal getAmount() { return amount; }
+    public void setAmount(BigDecimal amount) { this.amount = amount; }
+
+    public String getCurrency() { return currency; }
+    public void setCurrency(String currency) { this.currency = currency; }
+
+    public LocalDateTime getTimestamp() { return timestamp; }
+    public void setTimestamp(LocalDateTime timestamp) { this.timestamp = timestamp; }
+
+    public int getRetryCount() { return retryCount; }
+    public void setRetryCount(int retryCount) { this.retryCount = retryCount; }
+
+    public Instant getFailedAt() { return failedAt; }
+    public void setFailedAt(Instant failedAt) { this.failedAt = failedAt; }
+
+    public String getReason() { return reason; }
+    public void setReason(String reason) { this.reason = reason; }
+
+    public String getBroker() { return broker; }
+    public void setBroker(String broker) { this.broker = broker; }
+
+    public String getExceptionClass() { return exceptionClass; }
+    public void setExceptionClass(String exceptionClass) { this.exceptionClass = exceptionClass; }
+
+    public String getOriginalTopic() { return originalTopic; }
+    public void setOriginalTopic(String originalTopic) { this.originalTopic = originalTopic; }
+
+    public int getAttempts() { return attempts; }
+    public void setAttempts(int attempts) { this.attempts = attempts; }
+
+    public Instant getFirstFailureAt() { return firstFailureAt; }
+    public void setFirstFailureAt(Instant firstFailureAt) { this.firstFailureAt = firstFailureAt; }
+}
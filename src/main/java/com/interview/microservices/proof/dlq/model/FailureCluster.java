@@ -0,0 +1,59 @@
+package com.interview.microservices.proof.dlq.model;
+
+import java.time.Instant;
+
+// DLQ entries sharing a failure cause, built from record headers only
+public class FailureCluster {
+    private String key;
+    private long count;
+    private int maxAttempts;
+    private Instant firstFailureAt;
+    private Instant lastFailureAt;
+    private String sampleReason;
+
+    // Constructors
+    public FailureCluster() {}
+
+    public FailureCluster(String key) {
+        this.key = key;
+    }
+
+    // Null for entries dead-lettered without failure headers (e.g. by the broker)
+    public void add(FailureMetadata failure) {
+        count++;
+        if (failure == null) {
+            return;
+        }
+        maxAttempts = Math.max(maxAttempts, failure.getAttempts());
+        Instant first = Instant.ofEpochMilli(failure.getFirstFailureAt());
+        Instant last = Instant.ofEpochMilli(failure.getLastFailureAt());
+        if (firstFailureAt == null || first.isBefore(firstFailureAt)) {
+            firstFailureAt = first;
+        }
+        if (lastFailureAt == null || last.isAfter(lastFailureAt)) {
+            lastFailureAt = last;
+        }
+        if (sampleReason == null) {
+            sampleReason = failure.getReason();
+        }
+    }
+
+    // Getters and Setters
+    public String getKey() { return key; }
+    public void setKey(String key) { this.key = key; }
+
+    public long getCount() { return count; }
+    public void setCount(long count) { this.count = count; }
+
+    public int getMaxAttempts() { return maxAttempts; }
+    public void setMaxAttempts(int maxAttempts) { this.maxAttempts = maxAttempts; }
+
+    public Instant getFirstFailureAt() { return firstFailureAt; }
+    public void setFirstFailureAt(Instant firstFailureAt) { this.firstFailureAt = firstFailureAt; }
+
+    public Instant getLastFailureAt() { return lastFailureAt; }
+    public void setLastFailureAt(Instant lastFailureAt) { this.lastFailureAt = lastFailureAt; }
+
+    public String getSampleReason() { return sampleReason; }
+    public void setSampleReason(String sampleReason) { this.sampleReason = sampleReason; }
+}
@@ -0,0 +1,66 @@
+package com.interview.microservices.proof.dlq.model;
+
+// Why and where a payment failed; travels with retry and DLQ records as headers, never in the payload
+public class FailureMetadata {
+    private String reason;
+    private String exceptionClass;
+    private int attempts;
+    private String originalTopic;
+    private Integer originalPartition;
+    private Long originalOffset;
+    private long firstFailureAt;
+    private long lastFailureAt;
+
+    // Constructors
+    public FailureMetadata() {}
+
+    /**
+     * Metadata for a failed attempt. Where and when the payment first failed is carried over from
+     * {@code previous}; for a first failure it is taken from the record that just failed.
+     */
+    public static FailureMetadata of(FailureMetadata previous, String topic, Integer partition, Long offset,
+                                     Throwable failure, int attempts) {
+        FailureMetadata metadata = new FailureMetadata();
+        metadata.reason = failure.getMessage();
+        metadata.exceptionClass = failure.getClass().getName();
+        metadata.attempts = attempts;
+        metadata.lastFailureAt = System.currentTimeMillis();
+        if (previous != null) {
+            metadata.originalTopic = previous.originalTopic;
+            metadata.originalPartition = previous.originalPartition;
+            metadata.originalOffset = previous.originalOffset;
+            metadata.firstFailureAt = previous.firstFailureAt;
+        } else {
+            metadata.originalTopic = topic;
+            metadata.originalPartition = partition;
+            metadata.originalOffset = offset;
+            metadata.firstFailureAt = metadata.lastFailureAt;
+        }
+        return metadata;
+    }
+
+    // Getters and Setters
+    public String getReason() { return reason; }
+    public void setReason(String reason) { this.reason = reason; }
+
+    public String getExceptionClass() { return exceptionClass; }
+    public void setExceptionClass(String exceptionClass) { this.exceptionClass = exceptionClass; }
+
+    public int getAttempts() { return attempts; }
+    public void setAttempts(int attempts) { this.attempts = attempts; }
+
+    public String getOriginalTopic() { return originalTopic; }
+    public void setOriginalTopic(String originalTopic) { this.originalTopic = originalTopic; }
+
+    public Integer getOriginalPartition() { return originalPartition; }
+    public void setOriginalPartition(Integer originalPartition) { this.originalPartition = originalPartition; }
+
+    public Long getOriginalOffset() { return originalOffset; }
+    public void setOriginalOffset(Long originalOffset) { this.originalOffset = originalOffset; }
+
+    public long getFirstFailureAt() { return firstFailureAt; }
+    public void setFirstFailureAt(long firstFailureAt) { this.firstFailureAt = firstFailureAt; }
+
+    public long getLastFailureAt() { return lastFailureAt; }
+    public void setLastFailureAt(long lastFailureAt) { this.lastFailureAt = lastFailureAt; }
+}
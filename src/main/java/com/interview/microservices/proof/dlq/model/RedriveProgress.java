@@ -0,0 +1,56 @@
+package com.interview.microservices.proof.dlq.model;
+
+import java.time.Instant;
+
+// Snapshot of a redrive job
+public class RedriveProgress {
+    private String jobId;
+    private String broker;
+    private String state;
+    private long total;
+    private long scanned;
+    private long redriven;
+    private long skipped;
+    private long failed;
+    private double recordsPerSecond;
+    private Instant startedAt;
+    private Instant finishedAt;
+    private String error;
+
+    // Getters and Setters
+    public String getJobId() { return jobId; }
+    public void setJobId(String jobId) { this.jobId = jobId; }
+
+    public String getBroker() { return broker; }
+    public void setBroker(String broker) { this.broker = broker; }
+
+    public String getState() { return state; }
+    public void setState(String state) { this.state = state; }
+
+    public long getTotal() { return total; }
+    public void setTotal(long total) { this.total = total; }
+
+    public long getScanned() { return scanned; }
+    public void setScanned(long scanned) { this.scanned = scanned; }
+
+    public long getRedriven() { return redriven; }
+    public void setRedriven(long redriven) { this.redriven = redriven; }
+
+    public long getSkipped() { return skipped; }
+    public void setSkipped(long skipped) { this.skipped = skipped; }
+
+    public long getFailed() { return failed; }
+    public void setFailed(long failed) { this.failed = failed; }
+
+    public double getRecordsPerSecond() { return recordsPerSecond; }
+    public void setRecordsPerSecond(double recordsPerSecond) { this.recordsPerSecond = recordsPerSecond; }
+
+    public Instant getStartedAt() { return startedAt; }
+    public void setStartedAt(Instant startedAt) { this.startedAt = startedAt; }
+
+    public Instant getFinishedAt() { return finishedAt; }
+    public void setFinishedAt(Instant finishedAt) { this.finishedAt = finishedAt; }
+
+    public String getError() { return error; }
+    public void setError(String error) { this.error = error; }
+}
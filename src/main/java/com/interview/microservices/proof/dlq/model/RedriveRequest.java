@@ -0,0 +1,36 @@
+package com.interview.microservices.proof.dlq.model;
+
+import java.time.Instant;
+
+// Which DLQ entries to redrive, and how fast
+public class RedriveRequest {
+    private String userId;
+    private String reason;
+    private Instant since;
+    private Instant until;
+    private Long maxRecords;
+    private Double ratePerSecond;
+    private boolean fromBeginning;
+
+    // Getters and Setters
+    public String getUserId() { return userId; }
+    public void setUserId(String userId) { this.userId = userId; }
+
+    public String getReason() { return reason; }
+    public void setReason(String reason) { this.reason = reason; }
+
+    public Instant getSince() { return since; }
+    public void setSince(Instant since) { this.since = since; }
+
+    public Instant getUntil() { return until; }
+    public void setUntil(Instant until) { this.until = until; }
+
+    public Long getMaxRecords() { return maxRecords; }
+    public void setMaxRecords(Long maxRecords) { this.maxRecords = maxRecords; }
+
+    public Double getRatePerSecond() { return ratePerSecond; }
+    public void setRatePerSecond(Double ratePerSecond) { this.ratePerSecond = ratePerSecond; }
+
+    public boolean isFromBeginning() { return fromBeginning; }
+    public void setFromBeginning(boolean fromBeginning) { this.fromBeginning = fromBeginning; }
+}
@@ -0,0 +1,165 @@
+package com.interview.microservices.proof.dlq.service;
+
+import com.interview.microservices.proof.dlq.config.FailureHeaders;
+import com.interview.microservices.proof.dlq.config.KafkaConfig;
+import com.interview.microservices.proof.dlq.model.FailedPayment;
+import com.interview.microservices.proof.dlq.model.FailureCluster;
+import com.interview.microservices.proof.dlq.model.FailureMetadata;
+import jakarta.annotation.PreDestroy;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.kafka.core.ConsumerFactory;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Groups DLQ entries into failure clusters from their failure metadata alone; payloads are never
+ * parsed. Aggregations run one at a time on a thread of their own, never on the request thread, and
+ * only look at the newest {@code maxRecords} entries. Kafka is read from the tail of each DLQ
+ * partition without committing offsets. RabbitMQ entries are read from the {@link FailedPaymentStore}
+ * the DLQ listener fills, since fetching them off {@code payment.dlq} and requeueing would reorder
+ * the queue and redeliver every message to that listener.
+ */
+@Service
+public class DlqAggregationService {
+
+    private static final Duration POLL_TIMEOUT = Duration.ofMillis(500);
+    private static final String UNKNOWN = "unknown";
+    // Aggregations waiting behind the running one; further requests are rejected
+    private static final int MAX_QUEUED = 4;
+
+    private final ConsumerFactory<String, byte[]> consumerFactory;
+    private final FailedPaymentStore failedPaymentStore;
+    private final ExecutorService executor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(MAX_QUEUED), runnable -> {
+                Thread thread = new Thread(runnable, "payment-dlq-aggregation");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    public DlqAggregationService(@Qualifier("redriveConsumerFactory") ConsumerFactory<String, byte[]> consumerFactory,
+                                 FailedPaymentStore failedPaymentStore) {
+        this.consumerFactory = consumerFactory;
+        this.failedPaymentStore = failedPaymentStore;
+    }
+
+    /**
+     * @param groupBy    {@code exception}, {@code reason} or {@code topic} (where the payment first failed)
+     * @param maxRecords upper bound on the DLQ entries looked at, newest first
+     * @return clusters, largest first
+     * @throws IllegalArgumentException    for an unknown broker or groupBy
+     * @throws RejectedExecutionException  if too many aggregations are already waiting
+     */
+    public CompletableFuture<List<FailureCluster>> aggregate(String broker, String groupBy, int maxRecords) {
+        Function<FailureMetadata, String> key = switch (groupBy) {
+            case "exception" -> FailureMetadata::getExceptionClass;
+            case "reason" -> FailureMetadata::getReason;
+            case "topic" -> FailureMetadata::getOriginalTopic;
+            default -> throw new IllegalArgumentException("Unknown groupBy: " + groupBy);
+        };
+        if (!DlqRedriveService.KAFKA.equals(broker) && !DlqRedriveService.RABBIT.equals(broker)) {
+            throw new IllegalArgumentException("Unknown broker: " + broker);
+        }
+
+        return CompletableFuture.supplyAsync(() -> {
+            Aggregation aggregation = new Aggregation(key, maxRecords);
+            if (DlqRedriveService.KAFKA.equals(broker)) {
+                scanKafka(aggregation);
+            } else {
+                scanFailedPayments(aggregation);
+            }
+            return aggregation.clusters.values().stream()
+                    .sorted(Comparator.comparingLong(FailureCluster::getCount).reversed())
+                    .toList();
+        }, executor);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    // Reads the last maxRecords / partitions records of each partition
+    private void scanKafka(Aggregation aggregation) {
+        try (Consumer<String, byte[]> consumer = consumerFactory.createConsumer()) {
+            List<TopicPartition> partitions = consumer.partitionsFor(KafkaConfig.DLQ_TOPIC).stream()
+                    .map(info -> new TopicPartition(info.topic(), info.partition()))
+                    .toList();
+            if (partitions.isEmpty()) {
+                return;
+            }
+            consumer.assign(partitions);
+            Map<TopicPartition, Long> beginningOffsets = consumer.beginningOffsets(partitions);
+            Map<TopicPartition, Long> endOffsets = consumer.endOffsets(partitions);
+            long perPartition = Math.max(1, aggregation.maxRecords / partitions.size());
+            for (TopicPartition partition : partitions) {
+                consumer.seek(partition, Math.max(beginningOffsets.get(partition),
+                        endOffsets.get(partition) - perPartition));
+            }
+
+            while (!aggregation.isFull() && !caughtUp(consumer, partitions, endOffsets)) {
+                for (ConsumerRecord<String, byte[]> record : consumer.poll(POLL_TIMEOUT)) {
+                    TopicPartition partition = new TopicPartition(record.topic(), record.partition());
+                    if (!aggregation.isFull() && record.offset() < endOffsets.get(partition)) {
+                        aggregation.add(FailureHeaders.read(record.headers()));
+                    }
+                }
+            }
+        }
+    }
+
+    private static boolean caughtUp(Consumer<String, byte[]> consumer,
+                                    List<TopicPartition> partitions, Map<TopicPartition, Long> endOffsets) {
+        for (TopicPartition partition : partitions) {
+            if (consumer.position(partition) < endOffsets.get(partition)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // The newest maxRecords stored failures, of which only RabbitMQ ones are counted
+    private void scanFailedPayments(Aggregation aggregation) {
+        for (FailedPayment payment : failedPaymentStore.find(null, null, null, aggregation.maxRecords)) {
+            if (DlqRedriveService.RABBIT.equals(payment.getBroker())) {
+                aggregation.add(payment.toFailureMetadata());
+            }
+        }
+    }
+
+    private static final class Aggregation {
+        final Function<FailureMetadata, String> key;
+        final int maxRecords;
+        final Map<String, FailureCluster> clusters = new HashMap<>();
+        long scanned;
+
+        Aggregation(Function<FailureMetadata, String> key, int maxRecords) {
+            this.key = key;
+            this.maxRecords = maxRecords;
+        }
+
+        boolean isFull() {
+            return scanned >= maxRecords;
+        }
+
+        void add(FailureMetadata failure) {
+            scanned++;
+            String clusterKey = failure != null ? key.apply(failure) : null;
+            clusters.computeIfAbsent(clusterKey != null ? clusterKey : UNKNOWN, FailureCluster::new).add(failure);
+        }
+    }
+}
@@ -0,0 +1,460 @@
+package com.interview.microservices.proof.dlq.service;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.interview.microservices.proof.dlq.config.FailureHeaders;
+import com.interview.microservices.proof.dlq.config.KafkaConfig;
+import com.interview.microservices.proof.dlq.config.RabbitMQConfig;
+import com.interview.microservices.proof.dlq.model.RedriveProgress;
+import com.interview.microservices.proof.dlq.model.RedriveRequest;
+import com.interview.microservices.proof.dlq.util.RateLimiter;
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.GetResponse;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.core.ConsumerFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Moves dead-lettered payments back onto the main topic/exchange once the cause is fixed.
+ * <p>
+ * One job per broker at a time, each on its own thread. A job only covers what is in the DLQ when
+ * it starts and is paced by a rate limiter so live traffic keeps its share of the main topic/queue.
+ * A redriven payment starts its retries over: its {@code retryCount} is reset to 0 and the
+ * {@link FailureHeaders} are dropped; everything else in the payload and headers is copied as is.
+ * Kafka progress is checkpointed as committed offsets of {@link KafkaConfig#REDRIVE_GROUP} after
+ * every acknowledged batch, so a cancelled or failed job resumes where it stopped. On RabbitMQ the
+ * DLQ listener drains {@code payment.dlq} into the review store, so redrive reads the copies it
+ * archives to {@code payment.dlq.archive} instead; consumption itself is the checkpoint there: a
+ * message is acked off the archive only once the broker has confirmed its redriven copy.
+ */
+@Service
+public class DlqRedriveService {
+
+    public static final String KAFKA = "kafka";
+    public static final String RABBIT = "rabbit";
+
+    private static final Duration POLL_TIMEOUT = Duration.ofMillis(500);
+    private static final long SEND_TIMEOUT_SECONDS = 30;
+
+    private final Logger logger = LoggerFactory.getLogger(DlqRedriveService.class);
+
+    private final ConsumerFactory<String, byte[]> consumerFactory;
+    private final KafkaTemplate<String, byte[]> kafkaTemplate;
+    private final RabbitTemplate rabbitTemplate;
+    private final ObjectMapper objectMapper;
+    private final MeterRegistry meterRegistry;
+    private final double defaultRatePerSecond;
+    private final int confirmBatchSize;
+
+    private final Map<String, RedriveJob> jobs = new ConcurrentHashMap<>();
+    private final Map<String, RedriveJob> runningByBroker = new ConcurrentHashMap<>();
+    private final ExecutorService executor = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "payment-dlq-redrive");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public DlqRedriveService(@Qualifier("redriveConsumerFactory") ConsumerFactory<String, byte[]> consumerFactory,
+                             @Qualifier("redriveKafkaTemplate") KafkaTemplate<String, byte[]> kafkaTemplate,
+                             RabbitTemplate rabbitTemplate,
+                             ObjectMapper objectMapper,
+                             MeterRegistry meterRegistry,
+                             @Value("${payment.redrive.default-rate-per-second:2000}") double defaultRatePerSecond,
+                             @Value("${payment.redrive.rabbit.confirm-batch-size:500}") int confirmBatchSize) {
+        this.consumerFactory = consumerFactory;
+        this.kafkaTemplate = kafkaTemplate;
+        this.rabbitTemplate = rabbitTemplate;
+        this.objectMapper = objectMapper;
+        this.meterRegistry = meterRegistry;
+        this.defaultRatePerSecond = defaultRatePerSecond;
+        this.confirmBatchSize = confirmBatchSize;
+
+        for (String broker : List.of(KAFKA, RABBIT)) {
+            Gauge.builder("payment.dlq.redrive.remaining", runningByBroker, running -> {
+                        RedriveJob job = running.get(broker);
+                        return job == null ? 0 : job.remaining();
+                    })
+                    .tag("broker", broker)
+                    .register(meterRegistry);
+        }
+    }
+
+    public RedriveProgress start(String broker, RedriveRequest request) {
+        if (!KAFKA.equals(broker) && !RABBIT.equals(broker)) {
+            throw new IllegalArgumentException("Unknown broker: " + broker);
+        }
+        double rate = request.getRatePerSecond() != null ? request.getRatePerSecond() : defaultRatePerSecond;
+        RedriveJob job = new RedriveJob(broker + "-" + UUID.randomUUID().toString().substring(0, 8),
+                broker, request, new RateLimiter(rate));
+
+        if (runningByBroker.putIfAbsent(broker, job) != null) {
+            throw new IllegalStateException("A " + broker + " DLQ redrive is already running");
+        }
+        jobs.put(job.id, job);
+        executor.execute(() -> run(job));
+        logger.info("Started DLQ redrive {} at {} records/s", job.id, rate);
+        return job.toProgress();
+    }
+
+    public RedriveProgress progress(String jobId) {
+        RedriveJob job = jobs.get(jobId);
+        return job == null ? null : job.toProgress();
+    }
+
+    public List<RedriveProgress> list() {
+        return jobs.values().stream().map(RedriveJob::toProgress).toList();
+    }
+
+    public RedriveProgress cancel(String jobId) {
+        RedriveJob job = jobs.get(jobId);
+        if (job == null) {
+            return null;
+        }
+        job.cancelled = true;
+        return job.toProgress();
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        runningByBroker.values().forEach(job -> job.cancelled = true);
+        executor.shutdown();
+        executor.awaitTermination(SEND_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    }
+
+    private void run(RedriveJob job) {
+        try {
+            if (KAFKA.equals(job.broker)) {
+                redriveKafka(job);
+            } else {
+                redriveRabbit(job);
+            }
+            job.finish(job.cancelled ? "CANCELLED" : "COMPLETED", null);
+            logger.info("DLQ redrive {} {}: {} redriven, {} skipped",
+                    job.id, job.state, job.redriven.get(), job.skipped.get());
+        } catch (Exception e) {
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            logger.error("DLQ redrive {} failed after {} records", job.id, job.redriven.get(), e);
+            job.finish("FAILED", e.getMessage());
+        } finally {
+            runningByBroker.remove(job.broker, job);
+        }
+    }
+
+    private void redriveKafka(RedriveJob job) throws Exception {
+        try (Consumer<String, byte[]> consumer = consumerFactory.createConsumer()) {
+            List<TopicPartition> partitions = consumer.partitionsFor(KafkaConfig.DLQ_TOPIC).stream()
+                    .map(info -> new TopicPartition(info.topic(), info.partition()))
+                    .toList();
+            consumer.assign(partitions);
+            if (job.request.isFromBeginning()) {
+                consumer.seekToBeginning(partitions);
+            }
+
+            // Stop at today's end offsets: records dead-lettered during the run wait for the next one
+            Map<TopicPartition, Long> endOffsets = consumer.endOffsets(partitions);
+            Set<TopicPartition> remaining = new HashSet<>(partitions);
+            long total = 0;
+            for (TopicPartition partition : partitions) {
+                total += Math.max(0, endOffsets.get(partition) - consumer.position(partition));
+            }
+            job.total.set(total);
+
+            while (!job.isStopped() && !pauseCaughtUp(consumer, remaining, endOffsets)) {
+                ConsumerRecords<String, byte[]> records = consumer.poll(POLL_TIMEOUT);
+                Map<TopicPartition, OffsetAndMetadata> checkpoint = new HashMap<>();
+                List<CompletableFuture<?>> sends = new ArrayList<>();
+
+                for (ConsumerRecord<String, byte[]> record : records) {
+                    TopicPartition partition = new TopicPartition(record.topic(), record.partition());
+                    if (job.isStopped() || record.offset() >= endOffsets.get(partition)) {
+                        continue;
+                    }
+                    job.scanned.incrementAndGet();
+
+                    Header reason = record.headers().lastHeader(FailureHeaders.REASON);
+                    if (matches(job.request, record.timestamp(),
+                            reason == null ? null : new String(reason.value(), StandardCharsets.UTF_8), record.value())) {
+                        job.rateLimiter.acquire();
+                        job.matched.incrementAndGet();
+                        Headers headers = new RecordHeaders(record.headers().toArray());
+                        FailureHeaders.clear(headers);
+                        sends.add(kafkaTemplate.send(new ProducerRecord<>(KafkaConfig.MAIN_TOPIC, null,
+                                record.key(), withRetriesReset(record.value()), headers)));
+                    } else {
+                        job.skipped.incrementAndGet();
+                        count(job, "skipped", 1);
+                    }
+                    checkpoint.put(partition, new OffsetAndMetadata(record.offset() + 1));
+                }
+
+                // Checkpoint only once every copy in the batch is on the main topic; a failed batch
+                // is redriven again on resume and the duplicates are dropped by the idempotency store
+                try {
+                    CompletableFuture.allOf(sends.toArray(CompletableFuture[]::new))
+                            .get(SEND_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+                } catch (Exception e) {
+                    job.failed.addAndGet(sends.size());
+                    count(job, "failed", sends.size());
+                    throw e;
+                }
+                job.redriven.addAndGet(sends.size());
+                count(job, "redriven", sends.size());
+                if (!checkpoint.isEmpty()) {
+                    consumer.commitSync(checkpoint);
+                }
+            }
+        }
+    }
+
+    // Drops partitions that reached their end offset (control records included) and stops fetching them
+    private static boolean pauseCaughtUp(Consumer<String, byte[]> consumer, Set<TopicPartition> remaining,
+                                         Map<TopicPartition, Long> endOffsets) {
+        List<TopicPartition> caughtUp = new ArrayList<>();
+        for (TopicPartition partition : remaining) {
+            if (consumer.position(partition) >= endOffsets.get(partition)) {
+                caughtUp.add(partition);
+            }
+        }
+        caughtUp.forEach(remaining::remove);
+        consumer.pause(caughtUp);
+        return remaining.isEmpty();
+    }
+
+    private void redriveRabbit(RedriveJob job) {
+        rabbitTemplate.execute(channel -> {
+            channel.confirmSelect();
+            List<Long> held = new ArrayList<>();
+            List<Long> unconfirmed = new ArrayList<>();
+            try {
+                // Only what is queued right now; skipped messages stay unacked until the end of the
+                // run so they are neither fetched twice nor reordered
+                long total = channel.messageCount(RabbitMQConfig.DLQ_ARCHIVE_QUEUE);
+                job.total.set(total);
+
+                while (job.scanned.get() < total && !job.isStopped()) {
+                    GetResponse response = channel.basicGet(RabbitMQConfig.DLQ_ARCHIVE_QUEUE, false);
+                    if (response == null) {
+                        break;
+                    }
+                    job.scanned.incrementAndGet();
+                    long tag = response.getEnvelope().getDeliveryTag();
+                    AMQP.BasicProperties properties = response.getProps();
+
+                    if (!matches(job.request, failedAt(properties),
+                            header(properties, FailureHeaders.REASON), response.getBody())) {
+                        held.add(tag);
+                        job.skipped.incrementAndGet();
+                        count(job, "skipped", 1);
+                        continue;
+                    }
+
+                    job.rateLimiter.acquire();
+                    job.matched.incrementAndGet();
+                    channel.basicPublish(RabbitMQConfig.MAIN_EXCHANGE, RabbitMQConfig.MAIN_ROUTING_KEY,
+                            withoutFailureHeaders(properties), withRetriesReset(response.getBody()));
+                    unconfirmed.add(tag);
+                    if (unconfirmed.size() >= confirmBatchSize) {
+                        confirmAndAck(channel, unconfirmed, job);
+                    }
+                }
+                confirmAndAck(channel, unconfirmed, job);
+            } finally {
+                // Skipped and unconfirmed messages go back to payment.dlq.archive untouched
+                for (long tag : held) {
+                    channel.basicNack(tag, false, true);
+                }
+                for (long tag : unconfirmed) {
+                    channel.basicNack(tag, false, true);
+                }
+            }
+            return null;
+        });
+    }
+
+    // Removes the archived originals only after the broker confirmed their copies
+    private void confirmAndAck(Channel channel, List<Long> unconfirmed, RedriveJob job) throws Exception {
+        if (unconfirmed.isEmpty()) {
+            return;
+        }
+        try {
+            channel.waitForConfirmsOrDie(TimeUnit.SECONDS.toMillis(SEND_TIMEOUT_SECONDS));
+        } catch (Exception e) {
+            job.failed.addAndGet(unconfirmed.size());
+            count(job, "failed", unconfirmed.size());
+            throw e;
+        }
+        for (long tag : unconfirmed) {
+            channel.basicAck(tag, false);
+        }
+        job.redriven.addAndGet(unconfirmed.size());
+        count(job, "redriven", unconfirmed.size());
+        unconfirmed.clear();
+    }
+
+    private boolean matches(RedriveRequest request, Long failedAt, String reason, byte[] body) {
+        if (request.getSince() != null && (failedAt == null || failedAt < request.getSince().toEpochMilli())) {
+            return false;
+        }
+        if (request.getUntil() != null && (failedAt == null || failedAt >= request.getUntil().toEpochMilli())) {
+            return false;
+        }
+        if (request.getReason() != null && (reason == null || !reason.contains(request.getReason()))) {
+            return false;
+        }
+        // The body is only parsed when filtering by user
+        return request.getUserId() == null || request.getUserId().equals(userId(body));
+    }
+
+    private String userId(byte[] body) {
+        try {
+            return objectMapper.readTree(body).path("userId").asText(null);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    // Gives the payment a full set of retries again; a body that isn't a JSON object goes out as is
+    private byte[] withRetriesReset(byte[] body) {
+        try {
+            // Decimals as BigDecimal so the amount is written back exactly
+            if (objectMapper.reader().with(DeserializationFeature.USE_BIG_DECIMAL_FOR_FLOATS).readTree(body)
+                    instanceof ObjectNode event && event.path("retryCount").asInt(0) != 0) {
+                event.put("retryCount", 0);
+                return objectMapper.writeValueAsBytes(event);
+            }
+        } catch (IOException e) {
+            logger.debug("Redriving unparseable payload unchanged", e);
+        }
+        return body;
+    }
+
+    private static AMQP.BasicProperties withoutFailureHeaders(AMQP.BasicProperties properties) {
+        if (properties.getHeaders() == null) {
+            return properties;
+        }
+        Map<String, Object> headers = new HashMap<>(properties.getHeaders());
+        FailureHeaders.NAMES.forEach(headers::remove);
+        return properties.builder().headers(headers).build();
+    }
+
+    // When the message was dead-lettered: the latest x-death entry, else the publish timestamp
+    private static Long failedAt(AMQP.BasicProperties properties) {
+        Map<String, Object> headers = properties.getHeaders();
+        if (headers != null && headers.get("x-death") instanceof List<?> deaths && !deaths.isEmpty()
+                && deaths.get(0) instanceof Map<?, ?> death && death.get("time") instanceof Date time) {
+            return time.getTime();
+        }
+        return properties.getTimestamp() == null ? null : properties.getTimestamp().getTime();
+    }
+
+    private static String header(AMQP.BasicProperties properties, String name) {
+        Object value = properties.getHeaders() == null ? null : properties.getHeaders().get(name);
+        return value == null ? null : value.toString();
+    }
+
+    private void count(RedriveJob job, String outcome, long records) {
+        if (records > 0) {
+            meterRegistry.counter("payment.dlq.redrive.records", "broker", job.broker, "outcome", outcome)
+                    .increment(records);
+        }
+    }
+
+    private static final class RedriveJob {
+        final String id;
+        final String broker;
+        final RedriveRequest request;
+        final RateLimiter rateLimiter;
+        final Instant startedAt = Instant.now();
+        final AtomicLong total = new AtomicLong();
+        final AtomicLong scanned = new AtomicLong();
+        final AtomicLong matched = new AtomicLong();
+        final AtomicLong redriven = new AtomicLong();
+        final AtomicLong skipped = new AtomicLong();
+        final AtomicLong failed = new AtomicLong();
+        volatile boolean cancelled;
+        volatile String state = "RUNNING";
+        volatile Instant finishedAt;
+        volatile String error;
+
+        RedriveJob(String id, String broker, RedriveRequest request, RateLimiter rateLimiter) {
+            this.id = id;
+            this.broker = broker;
+            this.request = request;
+            this.rateLimiter = rateLimiter;
+        }
+
+        boolean isStopped() {
+            return cancelled || (request.getMaxRecords() != null && matched.get() >= request.getMaxRecords());
+        }
+
+        long remaining() {
+            return Math.max(0, total.get() - scanned.get());
+        }
+
+        void finish(String state, String error) {
+            this.error = error;
+            this.finishedAt = Instant.now();
+            this.state = state;
+        }
+
+        RedriveProgress toProgress() {
+            RedriveProgress progress = new RedriveProgress();
+            progress.setJobId(id);
+            progress.setBroker(broker);
+            progress.setState(state);
+            progress.setTotal(total.get());
+            progress.setScanned(scanned.get());
+            progress.setRedriven(redriven.get());
+            progress.setSkipped(skipped.get());
+            progress.setFailed(failed.get());
+            progress.setStartedAt(startedAt);
+            progress.setFinishedAt(finishedAt);
+            progress.setError(error);
+
+            Instant end = finishedAt != null ? finishedAt : Instant.now();
+            double seconds = Math.max(0.001, Duration.between(startedAt, end).toMillis() / 1000.0);
+            progress.setRecordsPerSecond(redriven.get() / seconds);
+            return progress;
+        }
+    }
+}
@@ -0,0 +1,459 @@
+package com.interview.microservices.proof.dlq.service;
+
+import com.interview.microservices.proof.dlq.model.FailedPayment;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.MappedByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * Embedded append-only store for dead-lettered payments.
+ * <p>
+ * Records go into fixed-size memory-mapped segment files ({@code segment-<id>.log}) as
+ * {@code [int length][payload]}; the length is written last, so a record torn by a crash is never
+ * read back. The in-memory indexes (latest record per paymentId, records by userId and by failure
+ * time) are rebuilt from the segments on startup. A newer failure for the same paymentId
+ * supersedes the older one; sealed segments that are mostly superseded get compacted, and segments
+ * older than the retention period are dropped.
+ */
+@Service
+public class FailedPaymentStore {
+
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    // Version 3 adds the broker and failure metadata; version 2 writes strings as length-prefixed UTF-8.
+    // Version 1 (modified UTF-8, 64 KB max) and version 2 records are still read.
+    private static final byte FORMAT_VERSION = 3;
+    private static final byte FORMAT_VERSION_2 = 2;
+    private static final byte FORMAT_VERSION_1 = 1;
+
+    private final Logger logger = LoggerFactory.getLogger(FailedPaymentStore.class);
+
+    private final Path directory;
+    private final int segmentSize;
+    private final Duration retention;
+    private final double compactionLiveRatio;
+
+    private final ConcurrentNavigableMap<Integer, Segment> segments = new ConcurrentSkipListMap<>();
+    private volatile Segment active;
+
+    // Indexes: latest record per paymentId, live records per user and overall, ordered by failure time
+    private final ConcurrentMap<String, Ref> byPaymentId = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, NavigableSet<Ref>> byUserId = new ConcurrentHashMap<>();
+    private final NavigableSet<Ref> byFailedAt = new ConcurrentSkipListSet<>();
+
+    public FailedPaymentStore(@Value("${payment.failed-store.directory:data/failed-payments}") String directory,
+                              @Value("${payment.failed-store.segment-size-mb:64}") int segmentSizeMb,
+                              @Value("${payment.failed-store.retention-days:30}") int retentionDays,
+                              @Value("${payment.failed-store.compaction-live-ratio:0.5}") double compactionLiveRatio)
+            throws IOException {
+        this.directory = Paths.get(directory);
+        this.segmentSize = segmentSizeMb * 1024 * 1024;
+        this.retention = Duration.ofDays(retentionDays);
+        this.compactionLiveRatio = compactionLiveRatio;
+
+        Files.createDirectories(this.directory);
+        recover();
+    }
+
+    public synchronized void append(FailedPayment payment) {
+        byte[] payload = encode(payment);
+        if (4 + payload.length > segmentSize) {
+            throw new IllegalArgumentException("Failed payment record too large: " + payload.length + " bytes");
+        }
+        if (active.writePosition + 4 + payload.length > segmentSize) {
+            roll();
+        }
+
+        int offset = active.write(payload);
+        index(new Ref(payment.getFailedAt().toEpochMilli(), active.id, offset,
+                payment.getPaymentId(), payment.getUserId()), active);
+    }
+
+    public Optional<FailedPayment> findByPaymentId(String paymentId) {
+        Ref ref = byPaymentId.get(paymentId);
+        return ref == null ? Optional.empty() : Optional.ofNullable(read(ref));
+    }
+
+    /**
+     * Failed payments in {@code [since, until)}, newest first, optionally restricted to one user.
+     * Only the matching index range is walked, so the cost depends on {@code limit}, not the store size.
+     */
+    public List<FailedPayment> find(String userId, Instant since, Instant until, int limit) {
+        NavigableSet<Ref> index = userId == null ? byFailedAt : byUserId.get(userId);
+        if (index == null) {
+            return Collections.emptyList();
+        }
+
+        long from = since == null ? Long.MIN_VALUE : since.toEpochMilli();
+        long to = until == null ? Long.MAX_VALUE : until.toEpochMilli();
+        NavigableSet<Ref> range = index.subSet(Ref.lowerBound(from), true, Ref.lowerBound(to), false);
+
+        List<FailedPayment> result = new ArrayList<>(Math.min(limit, 256));
+        for (Ref ref : range.descendingSet()) {
+            if (result.size() >= limit) {
+                break;
+            }
+            FailedPayment payment = read(ref);
+            if (payment != null) {
+                result.add(payment);
+            }
+        }
+        return result;
+    }
+
+    public int size() {
+        return byPaymentId.size();
+    }
+
+    // Retention, compaction and flushing of the active segment
+    @Scheduled(fixedDelayString = "${payment.failed-store.maintenance-interval-ms:60000}")
+    public void maintain() {
+        long cutoff = Instant.now().minus(retention).toEpochMilli();
+        for (Segment segment : segments.values()) {
+            if (segment == active) {
+                continue;
+            }
+            try {
+                if (segment.maxFailedAt < cutoff) {
+                    logger.info("Dropping failed-payment segment {} past retention", segment.id);
+                    drop(segment);
+                } else if (segment.total.get() > 0
+                        && segment.live.get() < segment.total.get() * compactionLiveRatio) {
+                    compact(segment);
+                }
+            } catch (IOException e) {
+                logger.error("Maintenance failed for failed-payment segment {}", segment.id, e);
+            }
+        }
+        flush();
+    }
+
+    @PreDestroy
+    public synchronized void flush() {
+        active.buffer.force();
+    }
+
+    private void recover() throws IOException {
+        List<Integer> ids;
+        try (Stream<Path> files = Files.list(directory)) {
+            ids = files.map(path -> path.getFileName().toString())
+                    .filter(name -> name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX))
+                    .map(name -> Integer.parseInt(name.substring(SEGMENT_PREFIX.length(),
+                            name.length() - SEGMENT_SUFFIX.length())))
+                    .sorted()
+                    .toList();
+        }
+
+        for (int id : ids) {
+            Segment segment = openSegment(id);
+            segment.writePosition = scan(segment, (offset, payment) -> index(new Ref(
+                    payment.getFailedAt().toEpochMilli(), segment.id, offset,
+                    payment.getPaymentId(), payment.getUserId()), segment));
+            active = segment;
+        }
+        if (active == null) {
+            active = openSegment(0);
+        }
+        logger.info("Failed-payment store opened: {} segments, {} payments", segments.size(), byPaymentId.size());
+    }
+
+    private void roll() {
+        active.buffer.force();
+        try {
+            active = openSegment(active.id + 1);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to open failed-payment segment " + (active.id + 1), e);
+        }
+    }
+
+    private Segment openSegment(int id) throws IOException {
+        Path path = directory.resolve(SEGMENT_PREFIX + String.format("%010d", id) + SEGMENT_SUFFIX);
+        try (FileChannel channel = FileChannel.open(path,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            // The mapping outlives the channel
+            Segment segment = new Segment(id, path, channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize));
+            segments.put(id, segment);
+            return segment;
+        }
+    }
+
+    private void index(Ref ref, Segment segment) {
+        segment.total.incrementAndGet();
+        segment.live.incrementAndGet();
+        segment.maxFailedAt = Math.max(segment.maxFailedAt, ref.failedAt());
+
+        Ref previous = byPaymentId.put(ref.paymentId(), ref);
+        if (previous != null) {
+            unindex(previous);
+        }
+        if (ref.userId() != null) {
+            byUserId.computeIfAbsent(ref.userId(), userId -> new ConcurrentSkipListSet<>()).add(ref);
+        }
+        byFailedAt.add(ref);
+    }
+
+    private void unindex(Ref ref) {
+        byFailedAt.remove(ref);
+        if (ref.userId() != null) {
+            NavigableSet<Ref> userRefs = byUserId.get(ref.userId());
+            if (userRefs != null) {
+                userRefs.remove(ref);
+            }
+        }
+        Segment segment = segments.get(ref.segmentId());
+        if (segment != null) {
+            segment.live.decrementAndGet();
+        }
+    }
+
+    // Copies the live records of a sealed segment to the active one, then deletes it
+    private void compact(Segment segment) throws IOException {
+        List<FailedPayment> live = new ArrayList<>();
+        scan(segment, (offset, payment) -> {
+            if (isLive(segment, offset, payment.getPaymentId())) {
+                live.add(payment);
+            }
+        });
+
+        synchronized (this) {
+            for (FailedPayment payment : live) {
+                Ref current = byPaymentId.get(payment.getPaymentId());
+                // Skip records superseded while we were scanning
+                if (current != null && current.segmentId() == segment.id) {
+                    append(payment);
+                }
+            }
+        }
+        logger.info("Compacted failed-payment segment {}: kept {} of {} records",
+                segment.id, live.size(), segment.total.get());
+        drop(segment);
+    }
+
+    private synchronized void drop(Segment segment) throws IOException {
+        scan(segment, (offset, payment) -> {
+            if (isLive(segment, offset, payment.getPaymentId())) {
+                byPaymentId.remove(payment.getPaymentId());
+                unindex(new Ref(payment.getFailedAt().toEpochMilli(), segment.id, offset,
+                        payment.getPaymentId(), payment.getUserId()));
+            }
+        });
+        segments.remove(segment.id);
+        byUserId.values().removeIf(NavigableSet::isEmpty);
+        Files.deleteIfExists(segment.path);
+    }
+
+    private boolean isLive(Segment segment, int offset, String paymentId) {
+        Ref current = byPaymentId.get(paymentId);
+        return current != null && current.segmentId() == segment.id && current.offset() == offset;
+    }
+
+    private FailedPayment read(Ref ref) {
+        Segment segment = segments.get(ref.segmentId());
+        if (segment == null) {
+            // Dropped by retention or compaction after the lookup
+            return null;
+        }
+        int length = segment.buffer.getInt(ref.offset());
+        byte[] payload = new byte[length];
+        segment.buffer.get(ref.offset() + 4, payload);
+        return decode(payload);
+    }
+
+    // Walks the records of a segment, returning the position after the last complete one
+    private int scan(Segment segment, RecordVisitor visitor) {
+        int offset = 0;
+        while (offset + 4 <= segmentSize) {
+            int length = segment.buffer.getInt(offset);
+            if (length <= 0 || offset + 4 + length > segmentSize) {
+                break;
+            }
+            byte[] payload = new byte[length];
+            segment.buffer.get(offset + 4, payload);
+            visitor.visit(offset, decode(payload));
+            offset += 4 + length;
+        }
+        return offset;
+    }
+
+    private static byte[] encode(FailedPayment payment) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeByte(FORMAT_VERSION);
+            out.writeLong(payment.getFailedAt().toEpochMilli());
+            writeString(out, payment.getPaymentId());
+            writeString(out, payment.getUserId());
+            writeString(out, payment.getAmount() == null ? null : payment.getAmount().toPlainString());
+            writeString(out, payment.getCurrency());
+            LocalDateTime timestamp = payment.getTimestamp();
+            out.writeBoolean(timestamp != null);
+            if (timestamp != null) {
+                out.writeLong(timestamp.toEpochSecond(ZoneOffset.UTC));
+                out.writeInt(timestamp.getNano());
+            }
+            out.writeInt(payment.getRetryCount());
+            writeString(out, payment.getReason());
+            writeString(out, payment.getBroker());
+            writeString(out, payment.getExceptionClass());
+            writeString(out, payment.getOriginalTopic());
+            out.writeInt(payment.getAttempts());
+            out.writeBoolean(payment.getFirstFailureAt() != null);
+            if (payment.getFirstFailureAt() != null) {
+                out.writeLong(payment.getFirstFailureAt().toEpochMilli());
+            }
+            out.flush();
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to encode failed payment", e);
+        }
+    }
+
+    private static FailedPayment decode(byte[] payload) {
+        try {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+            byte version = in.readByte();
+            if (version != FORMAT_VERSION && version != FORMAT_VERSION_2 && version != FORMAT_VERSION_1) {
+                throw new IllegalStateException("Unsupported failed-payment record version: " + version);
+            }
+            FailedPayment payment = new FailedPayment();
+            payment.setFailedAt(Instant.ofEpochMilli(in.readLong()));
+            payment.setPaymentId(readString(in, version));
+            payment.setUserId(readString(in, version));
+            String amount = readString(in, version);
+            payment.setAmount(amount == null ? null : new BigDecimal(amount));
+            payment.setCurrency(readString(in, version));
+            if (in.readBoolean()) {
+                payment.setTimestamp(LocalDateTime.ofEpochSecond(in.readLong(), in.readInt(), ZoneOffset.UTC));
+            }
+            payment.setRetryCount(in.readInt());
+            payment.setReason(readString(in, version));
+            if (version >= FORMAT_VERSION) {
+                payment.setBroker(readString(in, version));
+                payment.setExceptionClass(readString(in, version));
+                payment.setOriginalTopic(readString(in, version));
+                payment.setAttempts(in.readInt());
+                if (in.readBoolean()) {
+                    payment.setFirstFailureAt(Instant.ofEpochMilli(in.readLong()));
+                }
+            }
+            return payment;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to decode failed payment", e);
+        }
+    }
+
+    // Presence flag, then the UTF-8 bytes with an int length; writeUTF would fail past 64 KB
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    private static String readString(DataInputStream in, byte version) throws IOException {
+        if (!in.readBoolean()) {
+            return null;
+        }
+        if (version == FORMAT_VERSION_1) {
+            return in.readUTF();
+        }
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // Position of a record, ordered by failure time for range queries
+    private record Ref(long failedAt, int segmentId, int offset, String paymentId, String userId)
+            implements Comparable<Ref> {
+
+        static Ref lowerBound(long failedAt) {
+            return new Ref(failedAt, Integer.MIN_VALUE, Integer.MIN_VALUE, null, null);
+        }
+
+        @Override
+        public int compareTo(Ref other) {
+            int result = Long.compare(failedAt, other.failedAt);
+            if (result == 0) {
+                result = Integer.compare(segmentId, other.segmentId);
+            }
+            return result != 0 ? result : Integer.compare(offset, other.offset);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Ref other
+                    && failedAt == other.failedAt && segmentId == other.segmentId && offset == other.offset;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(failedAt) * 31 * 31 + segmentId * 31 + offset;
+        }
+    }
+
+    private static final class Segment {
+        final int id;
+        final Path path;
+        final MappedByteBuffer buffer;
+        final AtomicInteger total = new AtomicInteger();
+        final AtomicInteger live = new AtomicInteger();
+        volatile long maxFailedAt = Long.MIN_VALUE;
+        int writePosition;
+
+        Segment(int id, Path path, MappedByteBuffer buffer) {
+            this.id = id;
+            this.path = path;
+            this.buffer = buffer;
+        }
+
+        // Payload first, length last: the length is the commit marker
+        int write(byte[] payload) {
+            int offset = writePosition;
+            buffer.put(offset + 4, payload);
+            buffer.putInt(offset, payload.length);
+            writePosition += 4 + payload.length;
+            return offset;
+        }
+    }
+
+    @FunctionalInterface
+    private interface RecordVisitor {
+        void visit(int offset, FailedPayment payment);
+    }
+}
@@ -0,0 +1,252 @@
+package com.interview.microservices.proof.dlq.service;
+
+import com.interview.microservices.proof.dlq.util.RotatingBloomFilter;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Remembers processed paymentIds so redeliveries can be skipped without re-running processPayment
+@Service
+public class IdempotencyStore {
+
+    private static final String KEY_PREFIX = "payment:processed:";
+    // Every instance announces the ids it marks, so a redelivery to another instance hits its filter too
+    private static final String MARKS_CHANNEL = "payment:processed";
+    private static final String SEPARATOR = "\n";
+    private static final int WARM_UP_SCAN_COUNT = 1000;
+    // Missed heartbeats after which the subscription counts as dropped
+    private static final int MISSED_HEARTBEATS = 3;
+
+    private final Logger logger = LoggerFactory.getLogger(IdempotencyStore.class);
+    private final StringRedisTemplate redisTemplate;
+    private final RedisMessageListenerContainer listenerContainer;
+    private final boolean enabled;
+    private final Duration ttl;
+    private final long heartbeatIntervalMs;
+    private final String instanceId = UUID.randomUUID().toString();
+
+    // Fast path only: an id stays in it for between one and two TTLs; Redis (with the real TTL) stays
+    // authoritative. Until it has been warmed from Redis a negative means "unknown", not "new". Peers'
+    // marks only reach it over pub/sub, which drops messages while the subscription is down, so a
+    // negative is also "unknown" once our own heartbeat stops coming back, and after it comes back
+    // the filter is warmed again from Redis.
+    private final RotatingBloomFilter filter;
+    private volatile boolean warmed;
+    private volatile long lastHeartbeatAt;
+    private final AtomicBoolean warming = new AtomicBoolean();
+    // Set when the subscription dropped during a warm-up, which then has to scan again
+    private volatile boolean rescan;
+
+    public IdempotencyStore(StringRedisTemplate redisTemplate, RedisMessageListenerContainer listenerContainer,
+                            @Value("${payment.idempotency.enabled:true}") boolean enabled,
+                            @Value("${payment.idempotency.ttl-hours:24}") long ttlHours,
+                            @Value("${payment.idempotency.expected-insertions:1000000}") int expectedInsertions,
+                            @Value("${payment.idempotency.false-positive-rate:0.01}") double falsePositiveRate,
+                            @Value("${payment.idempotency.heartbeat-interval-ms:1000}") long heartbeatIntervalMs) {
+        this.redisTemplate = redisTemplate;
+        this.listenerContainer = listenerContainer;
+        this.enabled = enabled;
+        this.ttl = Duration.ofHours(ttlHours);
+        this.heartbeatIntervalMs = heartbeatIntervalMs;
+        this.filter = new RotatingBloomFilter(expectedInsertions, falsePositiveRate, ttl);
+    }
+
+    @PostConstruct
+    void init() {
+        if (!enabled) {
+            return;
+        }
+        // The first heartbeat to come back starts the warm-up, so the scan only begins once we are
+        // subscribed and nothing marked during it is missed
+        listenerContainer.addMessageListener(this::onPeerMarks, new ChannelTopic(MARKS_CHANNEL));
+    }
+
+    // Round trip through the marks channel; while it keeps coming back, no peer's marks were lost
+    @Scheduled(fixedDelayString = "${payment.idempotency.heartbeat-interval-ms:1000}")
+    public void heartbeat() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            redisTemplate.convertAndSend(MARKS_CHANNEL, instanceId);
+        } catch (Exception e) {
+            logger.debug("Failed to send idempotency heartbeat", e);
+        }
+    }
+
+    public boolean isProcessed(String paymentId) {
+        if (!enabled) {
+            return false;
+        }
+        if (trustsNegatives() && !filter.mightContain(paymentId)) {
+            // Fast negative: never seen within the TTL window
+            return false;
+        }
+
+        try {
+            return Boolean.TRUE.equals(redisTemplate.hasKey(KEY_PREFIX + paymentId));
+        } catch (Exception e) {
+            // Fail open: processing twice beats dropping a payment
+            logger.warn("Idempotency check failed for payment: {}", paymentId, e);
+            return false;
+        }
+    }
+
+    // Bulk variant: one MGET for all ids that pass the Bloom filter (all of them until it is warmed)
+    public Set<String> findProcessed(Collection<String> paymentIds) {
+        Set<String> processed = new HashSet<>();
+        if (!enabled) {
+            return processed;
+        }
+
+        boolean trustsNegatives = trustsNegatives();
+        List<String> candidates = new ArrayList<>();
+        for (String paymentId : paymentIds) {
+            if (!trustsNegatives || filter.mightContain(paymentId)) {
+                candidates.add(paymentId);
+            }
+        }
+        if (candidates.isEmpty()) {
+            return processed;
+        }
+
+        try {
+            List<String> values = redisTemplate.opsForValue()
+                    .multiGet(candidates.stream().map(id -> KEY_PREFIX + id).toList());
+            if (values != null) {
+                for (int i = 0; i < candidates.size(); i++) {
+                    if (values.get(i) != null) {
+                        processed.add(candidates.get(i));
+                    }
+                }
+            }
+        } catch (Exception e) {
+            logger.warn("Idempotency check failed for {} payments", candidates.size(), e);
+        }
+        return processed;
+    }
+
+    public void markProcessed(String paymentId) {
+        markProcessed(List.of(paymentId));
+    }
+
+    public void markProcessed(Collection<String> paymentIds) {
+        if (!enabled || paymentIds.isEmpty()) {
+            return;
+        }
+
+        paymentIds.forEach(filter::put);
+
+        try {
+            redisTemplate.executePipelined(new SessionCallback<Object>() {
+                @Override
+                @SuppressWarnings("unchecked")
+                public Object execute(RedisOperations operations) {
+                    RedisOperations<String, String> ops = (RedisOperations<String, String>) operations;
+                    paymentIds.forEach(paymentId -> ops.opsForValue().set(KEY_PREFIX + paymentId, "1", ttl));
+                    ops.convertAndSend(MARKS_CHANNEL, instanceId + SEPARATOR + String.join(SEPARATOR, paymentIds));
+                    return null;
+                }
+            });
+        } catch (Exception e) {
+            logger.warn("Failed to record {} processed payments", paymentIds.size(), e);
+        }
+    }
+
+    private boolean trustsNegatives() {
+        return warmed && System.currentTimeMillis() - lastHeartbeatAt <= MISSED_HEARTBEATS * heartbeatIntervalMs;
+    }
+
+    private void onHeartbeat() {
+        long now = System.currentTimeMillis();
+        long previous = lastHeartbeatAt;
+        lastHeartbeatAt = now;
+        if (warmed && now - previous <= MISSED_HEARTBEATS * heartbeatIntervalMs) {
+            return;
+        }
+        if (warmed) {
+            logger.warn("Idempotency marks subscription was down for {} ms, warming the filter again",
+                    now - previous);
+            warmed = false;
+        }
+        rescan = true;
+        if (warming.compareAndSet(false, true)) {
+            Thread warmUp = new Thread(this::warmUp, "idempotency-warm-up");
+            warmUp.setDaemon(true);
+            warmUp.start();
+        }
+    }
+
+    // Loads every id Redis still holds into the filter; negatives are trusted only once a scan
+    // finished without the subscription dropping in the meantime
+    private void warmUp() {
+        try {
+            while (rescan) {
+                rescan = false;
+                if (scan()) {
+                    warmed = !rescan;
+                } else {
+                    // Stay cold: every check keeps going to Redis, and the next heartbeat tries again
+                    return;
+                }
+            }
+        } finally {
+            warming.set(false);
+        }
+    }
+
+    private boolean scan() {
+        long start = System.currentTimeMillis();
+        long loaded = 0;
+        ScanOptions options = ScanOptions.scanOptions().match(KEY_PREFIX + "*").count(WARM_UP_SCAN_COUNT).build();
+        try (Cursor<String> keys = redisTemplate.scan(options)) {
+            while (keys.hasNext()) {
+                filter.put(keys.next().substring(KEY_PREFIX.length()));
+                loaded++;
+            }
+            logger.info("Idempotency filter warmed with {} processed payments in {} ms",
+                    loaded, System.currentTimeMillis() - start);
+            return true;
+        } catch (Exception e) {
+            logger.warn("Failed to warm the idempotency filter after {} payments", loaded, e);
+            return false;
+        }
+    }
+
+    private void onPeerMarks(Message message, byte[] pattern) {
+        String[] parts = new String(message.getBody(), StandardCharsets.UTF_8).split(SEPARATOR);
+        if (parts[0].equals(instanceId)) {
+            if (parts.length == 1) {
+                onHeartbeat();
+            }
+            return;
+        }
+        if (parts.length < 2) {
+            return;
+        }
+        for (int i = 1; i < parts.length; i++) {
+            filter.put(parts[i]);
+        }
+    }
+}
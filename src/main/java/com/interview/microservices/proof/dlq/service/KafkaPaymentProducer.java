@@ -1,27 +1,50 @@
 package com.interview.microservices.proof.dlq.service;
 
+import com.interview.microservices.proof.dlq.config.FailureHeaders;
 import com.interview.microservices.proof.dlq.config.KafkaConfig;
+import com.interview.microservices.proof.dlq.config.PaymentEventDeserializer;
+import com.interview.microservices.proof.dlq.model.FailureMetadata;
 import com.interview.microservices.proof.dlq.model.PaymentEvent;
+import com.interview.microservices.proof.dlq.util.PaymentMetrics;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.header.Headers;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.SendResult;
 import org.springframework.stereotype.Service;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
 // 6. Kafka Producer Service
 @Service
 public class KafkaPaymentProducer {
 
     private final KafkaTemplate<String, PaymentEvent> kafkaTemplate;
+    private final KafkaTemplate<String, byte[]> deadLetterKafkaTemplate;
+    private final KafkaTemplate<String, Object> transactionalKafkaTemplate;
+    private final PaymentMetrics metrics;
     private final Logger logger = LoggerFactory.getLogger(KafkaPaymentProducer.class);
 
-    public KafkaPaymentProducer(KafkaTemplate<String, PaymentEvent> kafkaTemplate) {
+    public KafkaPaymentProducer(KafkaTemplate<String, PaymentEvent> kafkaTemplate,
+                                @Qualifier("deadLetterKafkaTemplate")
+                                KafkaTemplate<String, byte[]> deadLetterKafkaTemplate,
+                                @Qualifier("transactionalKafkaTemplate")
+                                KafkaTemplate<String, Object> transactionalKafkaTemplate,
+                                PaymentMetrics metrics) {
         this.kafkaTemplate = kafkaTemplate;
+        this.deadLetterKafkaTemplate = deadLetterKafkaTemplate;
+        this.transactionalKafkaTemplate = transactionalKafkaTemplate;
+        this.metrics = metrics;
     }
 
     public void sendPaymentEvent(PaymentEvent event) {
         try {
 
-            kafkaTemplate.send(KafkaConfig.MAIN_TOPIC, event.getPaymentId(), event)
+            timed(KafkaConfig.MAIN_TOPIC, () -> kafkaTemplate.send(KafkaConfig.MAIN_TOPIC, event.getPaymentId(), event))
                     .thenAccept(result ->
                             logger.info("Payment event sent successfully: {}", result.getProducerRecord().key()))
                     .exceptionally(ex -> {
@@ -34,21 +57,74 @@ public class KafkaPaymentProducer {
         }
     }
 
-    public void sendToDlq(PaymentEvent event, String reason) {
-        try {
-            // Add metadata about the failure
-            event.setRetryCount(-1); // Mark as DLQ message
+    public CompletableFuture<SendResult<String, PaymentEvent>> sendToRetry(PaymentEvent event, FailureMetadata failure) {
+        // The tier is picked from the retry count; the record timestamp marks when the wait started
+        String topic = KafkaConfig.retryTopic(event.getRetryCount());
+        ProducerRecord<String, PaymentEvent> record = failureRecord(topic, event.getPaymentId(), event, null, failure);
+        return timed(topic, () -> kafkaTemplate.send(record))
+                .whenComplete((result, ex) -> {
+                    if (ex == null) {
+                        logger.info("Payment event sent to retry topic {}: {}", topic, event.getPaymentId());
+                    } else {
+                        logger.error("Failed to send payment event to retry topic {}: {}",
+                                topic, event.getPaymentId(), ex);
+                    }
+                });
+    }
+
+    public CompletableFuture<SendResult<String, byte[]>> sendToDlq(ConsumerRecord<String, PaymentEvent> consumed,
+                                                                   FailureMetadata failure) {
+        // The payload goes out byte for byte as consumed; why it failed travels in the headers
+        String paymentId = consumed.value().getPaymentId();
+        ProducerRecord<String, byte[]> record = deadLetterRecord(consumed, failure);
+        return timed(KafkaConfig.DLQ_TOPIC, () -> deadLetterKafkaTemplate.send(record))
+                .whenComplete((result, ex) -> {
+                    if (ex == null) {
+                        logger.info("Payment event sent to DLQ: {} (reason: {})", paymentId, failure.getReason());
+                    } else {
+                        logger.error("Failed to send payment event to DLQ: {}", paymentId, ex);
+                    }
+                });
+    }
 
-            kafkaTemplate.send(KafkaConfig.DLQ_TOPIC, event.getPaymentId(), event)
-                    .thenAccept(
-                            result -> logger.info("Payment event sent to DLQ: {} (reason: {})",
-                                    event.getPaymentId(), reason)
+    // The *InTransaction sends must run inside an exactly-once listener's Kafka transaction (the
+    // main-topic batch or a retry tier): they are committed or aborted together with the consumed offsets
 
-                    ).exceptionally( (failure )-> {logger.error("Failed to send payment event to DLQ: {}",
-                            event.getPaymentId(), failure);return null;});
-        } catch (Exception e) {
-            logger.error("Error sending payment event to DLQ: {}", event.getPaymentId(), e);
-        }
+    public void sendToRetryInTransaction(PaymentEvent event, FailureMetadata failure) {
+        String topic = KafkaConfig.retryTopic(event.getRetryCount());
+        ProducerRecord<String, Object> record = failureRecord(topic, event.getPaymentId(), event, null, failure);
+        timed(topic, () -> transactionalKafkaTemplate.send(record));
+        logger.info("Payment event sent to retry topic {} in transaction: {}", topic, event.getPaymentId());
     }
-}
 
+    public void sendToDlqInTransaction(ConsumerRecord<String, PaymentEvent> consumed, FailureMetadata failure) {
+        ProducerRecord<String, Object> record = failureRecord(KafkaConfig.DLQ_TOPIC, consumed.key(),
+                PaymentEventDeserializer.rawValue(consumed.headers()), consumed.headers(), failure);
+        timed(KafkaConfig.DLQ_TOPIC, () -> transactionalKafkaTemplate.send(record));
+        logger.info("Payment event sent to DLQ in transaction: {} (reason: {})",
+                consumed.value().getPaymentId(), failure.getReason());
+    }
+
+    // Send latency from the call until the broker acks (or the send fails)
+    private <V> CompletableFuture<SendResult<String, V>> timed(
+            String topic, Supplier<CompletableFuture<SendResult<String, V>>> send) {
+        long start = System.nanoTime();
+        return send.get().whenComplete((result, ex) -> metrics.recordSend(topic, start, ex == null));
+    }
+
+    private static ProducerRecord<String, byte[]> deadLetterRecord(ConsumerRecord<String, PaymentEvent> consumed,
+                                                                   FailureMetadata failure) {
+        return failureRecord(KafkaConfig.DLQ_TOPIC, consumed.key(),
+                PaymentEventDeserializer.rawValue(consumed.headers()), consumed.headers(), failure);
+    }
+
+    // Keeps the headers a record was consumed with (the JSON type id among them), except the
+    // consumer-side raw payload, and adds why it failed
+    private static <V> ProducerRecord<String, V> failureRecord(String topic, String key, V value,
+                                                               Headers consumedHeaders, FailureMetadata failure) {
+        ProducerRecord<String, V> record = new ProducerRecord<>(topic, null, key, value, consumedHeaders);
+        record.headers().remove(PaymentEventDeserializer.RAW_VALUE);
+        FailureHeaders.write(failure, record.headers());
+        return record;
+    }
+}
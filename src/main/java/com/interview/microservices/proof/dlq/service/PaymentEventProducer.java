@@ -2,27 +2,67 @@ package com.interview.microservices.proof.dlq.service;
 
 import com.interview.microservices.proof.dlq.config.RabbitMQConfig;
 import com.interview.microservices.proof.dlq.model.PaymentEvent;
+import com.interview.microservices.proof.dlq.util.PaymentMetrics;
+import jakarta.annotation.PreDestroy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
 // 3. RabbitMQ Message Producer
 @Service
 public class PaymentEventProducer {
 
     private final RabbitTemplate rabbitTemplate;
+    private final PaymentMetrics metrics;
     private final Logger logger = LoggerFactory.getLogger(PaymentEventProducer.class);
 
-    public PaymentEventProducer(RabbitTemplate rabbitTemplate) {
+    // Async publishing: bounded window of unconfirmed messages, published in batches on one channel
+    private final Semaphore inFlight;
+    private final BlockingQueue<PendingPublish> outbound = new LinkedBlockingQueue<>();
+    private final ExecutorService publisher = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "payment-rabbit-publisher");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final int batchSize;
+    private final long windowTimeoutMs;
+    private final long confirmTimeoutMs;
+    private volatile boolean running = true;
+
+    public PaymentEventProducer(RabbitTemplate rabbitTemplate,
+                                PaymentMetrics metrics,
+                                @Value("${payment.rabbit.publisher.max-in-flight:1000}") int maxInFlight,
+                                @Value("${payment.rabbit.publisher.batch-size:100}") int batchSize,
+                                @Value("${payment.rabbit.publisher.window-timeout-ms:1000}") long windowTimeoutMs,
+                                @Value("${payment.rabbit.publisher.confirm-timeout-ms:5000}") long confirmTimeoutMs) {
         this.rabbitTemplate = rabbitTemplate;
+        this.metrics = metrics;
+        this.inFlight = new Semaphore(maxInFlight);
+        this.batchSize = batchSize;
+        this.windowTimeoutMs = windowTimeoutMs;
+        this.confirmTimeoutMs = confirmTimeoutMs;
+        publisher.execute(this::publishLoop);
     }
 
     public void sendPaymentEvent(PaymentEvent event) {
         try {
             rabbitTemplate.convertAndSend(
                     RabbitMQConfig.MAIN_EXCHANGE,
-                    "payment.process",
+                    RabbitMQConfig.MAIN_ROUTING_KEY,
                     event
             );
             logger.info("Payment event sent: {}", event.getPaymentId());
@@ -31,4 +71,91 @@ public class PaymentEventProducer {
             throw new RuntimeException("Failed to send payment event", e);
         }
     }
+
+    /**
+     * Queues the event for batched publishing. The returned future completes when the broker
+     * confirms the message, and fails on a nack, an unroutable return, a confirm timeout, or
+     * when the in-flight window stays full for longer than the window timeout.
+     */
+    public CompletableFuture<Void> sendPaymentEventAsync(PaymentEvent event) {
+        CompletableFuture<Void> result = new CompletableFuture<>();
+        long start = System.nanoTime();
+        try {
+            if (!inFlight.tryAcquire(windowTimeoutMs, TimeUnit.MILLISECONDS)) {
+                result.completeExceptionally(new IllegalStateException("Too many unconfirmed payment events"));
+                return result;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            result.completeExceptionally(e);
+            return result;
+        }
+
+        CorrelationData correlation = new CorrelationData(event.getPaymentId() + ":" + UUID.randomUUID());
+        correlation.getFuture().whenComplete((confirm, ex) -> {
+            inFlight.release();
+            metrics.recordPublish(start, ex == null && correlation.getReturned() == null && confirm.isAck());
+            if (ex != null) {
+                result.completeExceptionally(ex);
+            } else if (correlation.getReturned() != null) {
+                result.completeExceptionally(new IllegalStateException(
+                        "Payment event unroutable: " + correlation.getReturned().getReplyText()));
+            } else if (!confirm.isAck()) {
+                result.completeExceptionally(new IllegalStateException("Payment event nacked: " + confirm.getReason()));
+            } else {
+                logger.info("Payment event confirmed: {}", event.getPaymentId());
+                result.complete(null);
+            }
+        });
+
+        outbound.add(new PendingPublish(event, correlation));
+        return result.orTimeout(confirmTimeoutMs, TimeUnit.MILLISECONDS);
+    }
+
+    private void publishLoop() {
+        List<PendingPublish> batch = new ArrayList<>(batchSize);
+        while (running || !outbound.isEmpty()) {
+            try {
+                PendingPublish first = outbound.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                outbound.drainTo(batch, batchSize - 1);
+                publishBatch(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void publishBatch(List<PendingPublish> batch) {
+        try {
+            // One channel for the whole batch; confirms come back asynchronously per message
+            rabbitTemplate.invoke(operations -> {
+                for (PendingPublish pending : batch) {
+                    operations.convertAndSend(RabbitMQConfig.MAIN_EXCHANGE, RabbitMQConfig.MAIN_ROUTING_KEY,
+                            pending.event(), pending.correlation());
+                }
+                return null;
+            });
+        } catch (Exception e) {
+            logger.error("Failed to publish batch of {} payment events", batch.size(), e);
+            for (PendingPublish pending : batch) {
+                pending.correlation().getFuture().completeExceptionally(e);
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        running = false;
+        publisher.shutdown();
+        publisher.awaitTermination(confirmTimeoutMs, TimeUnit.MILLISECONDS);
+    }
+
+    private record PendingPublish(PaymentEvent event, CorrelationData correlation) {}
 }
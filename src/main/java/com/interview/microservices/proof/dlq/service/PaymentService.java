@@ -1,42 +1,126 @@
 package com.interview.microservices.proof.dlq.service;
 
 
+import com.interview.microservices.proof.dlq.model.FailedPayment;
+import com.interview.microservices.proof.dlq.model.FailureMetadata;
 import com.interview.microservices.proof.dlq.model.PaymentEvent;
+import com.interview.microservices.proof.dlq.util.PaymentMetrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
 // 8. Payment Service (Business Logic)
 @Service
 public class PaymentService {
 
     private final Logger logger = LoggerFactory.getLogger(PaymentService.class);
+    private final IdempotencyStore idempotencyStore;
+    private final FailedPaymentStore failedPaymentStore;
+    private final PaymentMetrics metrics;
+
+    public PaymentService(IdempotencyStore idempotencyStore, FailedPaymentStore failedPaymentStore,
+                          PaymentMetrics metrics) {
+        this.idempotencyStore = idempotencyStore;
+        this.failedPaymentStore = failedPaymentStore;
+        this.metrics = metrics;
+    }
 
     public void processPayment(PaymentEvent event) {
+        long start = System.nanoTime();
+
+        // Redelivered payment that already went through: skip it
+        if (idempotencyStore.isProcessed(event.getPaymentId())) {
+            logger.info("Skipping already processed payment: {}", event.getPaymentId());
+            metrics.recordDuplicate(start);
+            return;
+        }
+
         // Simulate processing logic
         logger.info("Processing payment: {} for user: {} amount: {}",
                 event.getPaymentId(), event.getUserId(), event.getAmount());
 
+        boolean success = false;
+        try {
+            validate(event);
+
+            // Simulate database save, API calls, etc.
+            simulateWrite();
+
+            idempotencyStore.markProcessed(event.getPaymentId());
+            success = true;
+        } finally {
+            metrics.recordProcessing(start, success);
+        }
+        logger.info("Payment processed successfully: {}", event.getPaymentId());
+    }
+
+    /**
+     * Processes a batch of payments with a single bulk write. A failing payment does not fail
+     * the batch; it is reported back by its index in {@code events} so the caller can route it
+     * on its own.
+     *
+     * @return failures keyed by index into {@code events}, in ascending order; empty if all succeeded
+     */
+    public Map<Integer, Exception> processPayments(List<PaymentEvent> events) {
+        logger.info("Processing payment batch of {} events", events.size());
+        long start = System.nanoTime();
+
+        Set<String> alreadyProcessed = idempotencyStore.findProcessed(
+                events.stream().map(PaymentEvent::getPaymentId).toList());
+
+        Map<Integer, Exception> failures = new LinkedHashMap<>();
+        List<String> processed = new ArrayList<>();
+        for (int i = 0; i < events.size(); i++) {
+            PaymentEvent event = events.get(i);
+            if (alreadyProcessed.contains(event.getPaymentId())) {
+                continue;
+            }
+            try {
+                validate(event);
+                processed.add(event.getPaymentId());
+            } catch (Exception e) {
+                failures.put(i, e);
+            }
+        }
+
+        // One bulk save for the whole batch instead of one per payment
+        if (!processed.isEmpty()) {
+            simulateWrite();
+            idempotencyStore.markProcessed(processed);
+        }
+
+        metrics.recordBatch(start);
+        logger.info("Payment batch processed: {} succeeded, {} failed, {} duplicates skipped",
+                processed.size(), failures.size(), alreadyProcessed.size());
+        return failures;
+    }
+
+    private void validate(PaymentEvent event) {
         // Simulate potential failures
         if (event.getPaymentId().contains("fail")) {
             throw new RuntimeException("Payment processing failed");
         }
+    }
 
-        // Simulate database save, API calls, etc.
+    private void simulateWrite() {
         try {
             Thread.sleep(100); // Simulate processing time
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
         }
-
-        logger.info("Payment processed successfully: {}", event.getPaymentId());
     }
 
-    public void storeFailedPaymentForReview(PaymentEvent event) {
-        // Store failed payment in database for manual review
+    // failure is null for entries dead-lettered without failure headers (e.g. by the broker)
+    public void storeFailedPaymentForReview(String broker, PaymentEvent event, FailureMetadata failure) {
+        // Store failed payment for manual review, see GET /api/payments/failed
         logger.info("Storing failed payment for manual review: {}", event.getPaymentId());
-
-        // Implementation would involve saving to database
-        // with failure details, timestamps, etc.
+        failedPaymentStore.append(new FailedPayment(broker, event, failure, Instant.now()));
     }
 }
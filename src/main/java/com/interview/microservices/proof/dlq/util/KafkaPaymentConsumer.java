@@ -1,82 +1,213 @@
 package com.interview.microservices.proof.dlq.util;
 
+import com.interview.microservices.proof.dlq.config.FailureHeaders;
 import com.interview.microservices.proof.dlq.config.KafkaConfig;
+import com.interview.microservices.proof.dlq.model.FailureMetadata;
 import com.interview.microservices.proof.dlq.model.PaymentEvent;
 import com.interview.microservices.proof.dlq.service.KafkaPaymentProducer;
 import com.interview.microservices.proof.dlq.service.PaymentService;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
 import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.event.ListenerContainerIdleEvent;
 import org.springframework.kafka.support.Acknowledgment;
-import org.springframework.kafka.support.KafkaHeaders;
-import org.springframework.messaging.handler.annotation.Header;
 import org.springframework.stereotype.Component;
 
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 
 // 7. Kafka Consumer with DLQ handling
 @Component
 public class KafkaPaymentConsumer {
 
+    private static final long SEND_TIMEOUT_SECONDS = 10;
+    // In-place attempts at a failed batch hand-off before the batch is redelivered from it
+    private static final int HAND_OFF_RETRIES = 3;
+    private static final String PARALLEL_LISTENER_ID = "payment-parallel";
+
     private final Logger logger = LoggerFactory.getLogger(KafkaPaymentConsumer.class);
     private final PaymentService paymentService;
     private final KafkaPaymentProducer producer;
+    private final KeyOrderedExecutor workerPool;
+    private final OffsetTracker offsetTracker;
+    private final PaymentMetrics metrics;
+    private final boolean orderByUser;
 
-    public KafkaPaymentConsumer(PaymentService paymentService, KafkaPaymentProducer producer) {
+    public KafkaPaymentConsumer(PaymentService paymentService, KafkaPaymentProducer producer,
+                                KeyOrderedExecutor workerPool, OffsetTracker offsetTracker, PaymentMetrics metrics,
+                                @Value("${payment.kafka.parallel.ordering-key:payment-id}") String orderingKey) {
         this.paymentService = paymentService;
         this.producer = producer;
+        this.workerPool = workerPool;
+        this.offsetTracker = offsetTracker;
+        this.metrics = metrics;
+        this.orderByUser = "user-id".equals(orderingKey);
     }
 
-    @KafkaListener(topics = KafkaConfig.MAIN_TOPIC, groupId = "payment-service")
-    public void handlePaymentEvent(PaymentEvent event,
-                                   @Header(KafkaHeaders.RECEIVED_TOPIC) String topic,
-                                   @Header(KafkaHeaders.RECEIVED_PARTITION) int partition,
-                                   @Header(KafkaHeaders.OFFSET) long offset,
-                                   Acknowledgment acknowledgment) {
+    @KafkaListener(topics = KafkaConfig.MAIN_TOPIC, groupId = "payment-service",
+            autoStartup = "#{'" + KafkaConfig.LISTENER_MODE + "' == 'record'}")
+    public void handlePaymentEvent(ConsumerRecord<String, PaymentEvent> record, Acknowledgment acknowledgment) {
 
         logger.info("Processing payment event: {} (attempt: {})",
-                event.getPaymentId(), event.getRetryCount() + 1);
+                record.value().getPaymentId(), record.value().getRetryCount() + 1);
 
-        try {
-            // Process the payment
-            paymentService.processPayment(event);
-            logger.info("Payment processed successfully: {}", event.getPaymentId());
+        processWithRetry(record, acknowledgment);
+    }
 
-            // Acknowledge the message
-            acknowledgment.acknowledge();
+    @KafkaListener(topics = KafkaConfig.MAIN_TOPIC, groupId = "payment-service",
+            containerFactory = "batchKafkaListenerContainerFactory",
+            autoStartup = "#{'" + KafkaConfig.LISTENER_MODE + "' == 'batch'}")
+    public void handlePaymentBatch(List<ConsumerRecord<String, PaymentEvent>> records,
+                                   Acknowledgment acknowledgment) {
+
+        logger.info("Processing payment batch of {} events", records.size());
 
+        List<PaymentEvent> events = records.stream().map(ConsumerRecord::value).toList();
+        Map<Integer, Exception> failures = paymentService.processPayments(events);
+
+        // Start every hand-off before waiting on any, so the poll waits for the slowest send
+        // rather than for all of them one after the other
+        Map<Integer, Integer> retryCounts = new LinkedHashMap<>();
+        Map<Integer, CompletableFuture<Void>> handOffs = new LinkedHashMap<>();
+        failures.forEach((index, e) -> {
+            retryCounts.put(index, events.get(index).getRetryCount());
+            handOffs.put(index, handOff(records.get(index), e));
+        });
+        try {
+            CompletableFuture.allOf(handOffs.values().toArray(CompletableFuture[]::new))
+                    .get(SEND_TIMEOUT_SECONDS, TimeUnit.SECONDS);
         } catch (Exception e) {
-            logger.error("Failed to process payment: {} (attempt: {})",
-                    event.getPaymentId(), event.getRetryCount() + 1, e);
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            // Which hand-offs made it is checked one by one below
+        }
 
-            // Check if we should retry or send to DLQ
-            if (event.getRetryCount() < 3) {
-                event.incrementRetryCount();
+        // Failed hand-offs are retried in place, as in parallel mode, so the batch isn't redelivered
+        // over records whose retry or DLQ copy already went out. Only if one still can't be handed
+        // off is everything from it on redelivered: processed records after it are skipped by the
+        // idempotency store, but failed ones are handed off a second time, a duplicate retry or DLQ
+        // record that this trades for not dropping the payment.
+        for (Map.Entry<Integer, CompletableFuture<Void>> handOff : handOffs.entrySet()) {
+            CompletableFuture<Void> sent = handOff.getValue();
+            int index = handOff.getKey();
+            if ((!sent.isDone() || sent.isCompletedExceptionally())
+                    && !retryHandOff(records.get(index), failures.get(index), retryCounts.get(index))) {
+                logger.error("Failed to hand off payment: {}", events.get(index).getPaymentId());
+                acknowledgment.nack(index, Duration.ofMillis(KafkaConfig.retryDelayMs(1)));
+                return;
+            }
+        }
 
-                // Calculate delay (exponential backoff)
-                long delay = (long) Math.pow(2, event.getRetryCount()) * 1000;
+        acknowledgment.acknowledge();
+    }
 
-                // Send to retry topic with delay (you'd need to implement delay mechanism)
-                scheduleRetry(event, delay);
+    @KafkaListener(id = PARALLEL_LISTENER_ID, topics = KafkaConfig.MAIN_TOPIC, groupId = "payment-service",
+            containerFactory = "parallelKafkaListenerContainerFactory",
+            autoStartup = "#{'" + KafkaConfig.LISTENER_MODE + "' == 'parallel'}")
+    public void handlePaymentsInParallel(List<ConsumerRecord<String, PaymentEvent>> records,
+                                         Consumer<?, ?> consumer) {
 
-                acknowledgment.acknowledge();
-                logger.info("Payment event scheduled for retry after {} ms", delay);
+        // Fan the poll out across the worker lanes; records sharing a key stay in order. Nothing
+        // waits here: each partition is committed up to its oldest record still in a lane.
+        for (ConsumerRecord<String, PaymentEvent> record : records) {
+            TopicPartition partition = new TopicPartition(record.topic(), record.partition());
+            offsetTracker.track(partition, record.offset());
+            Object key = orderByUser ? record.value().getUserId() : record.key();
+            workerPool.submit(key, () -> processUntilHandedOff(record)).thenAccept(handedOff -> {
+                if (handedOff) {
+                    offsetTracker.complete(partition, record.offset());
+                }
+            });
+        }
 
-            } else {
-                // Max retries reached, send to DLQ
-                producer.sendToDlq(event, "Max retries exceeded: " + e.getMessage());
-                acknowledgment.acknowledge();
-                logger.error("Payment event sent to DLQ after {} attempts: {}",
-                        event.getRetryCount() + 1, event.getPaymentId());
-            }
+        offsetTracker.sync(consumer);
+    }
+
+    // Paused partitions return no records, so finished offsets are also committed on idle polls
+    @EventListener(condition = "event.listenerId.startsWith('" + PARALLEL_LISTENER_ID + "')")
+    public void onParallelListenerIdle(ListenerContainerIdleEvent event) {
+        offsetTracker.sync(event.getConsumer());
+    }
+
+    @KafkaListener(topics = KafkaConfig.MAIN_TOPIC, groupId = "payment-service",
+            containerFactory = "transactionalKafkaListenerContainerFactory",
+            autoStartup = "#{'" + KafkaConfig.LISTENER_MODE + "' == 'exactly-once'}")
+    public void handlePaymentBatchExactlyOnce(List<ConsumerRecord<String, PaymentEvent>> records) {
+
+        logger.info("Processing payment batch of {} events in a transaction", records.size());
+
+        List<PaymentEvent> events = records.stream().map(ConsumerRecord::value).toList();
+        Map<Integer, Exception> failures = paymentService.processPayments(events);
+
+        // Retry/DLQ records join the container's transaction; the container sends the batch
+        // offsets to the same transaction, so a crash can neither drop nor duplicate them.
+        // The payment writes and their idempotency marks are not part of it: a batch replayed
+        // after an abort skips the payments that were already written instead of writing them twice.
+        for (Map.Entry<Integer, Exception> failure : failures.entrySet()) {
+            handOffInTransaction(records.get(failure.getKey()), failure.getValue());
         }
     }
 
+    // Retry tiers: each tier has its own container, so a paused 8s tier never holds back the 2s tier
+    @KafkaListener(id = "payment-retry-2s", topics = KafkaConfig.RETRY_TOPIC_2S, groupId = "payment-retry-service",
+            autoStartup = "#{'" + KafkaConfig.LISTENER_MODE + "' != 'exactly-once'}")
+    public void handleRetry2s(ConsumerRecord<String, PaymentEvent> record, Acknowledgment acknowledgment) {
+        handleRetryEvent(record, acknowledgment);
+    }
+
+    @KafkaListener(id = "payment-retry-4s", topics = KafkaConfig.RETRY_TOPIC_4S, groupId = "payment-retry-service",
+            autoStartup = "#{'" + KafkaConfig.LISTENER_MODE + "' != 'exactly-once'}")
+    public void handleRetry4s(ConsumerRecord<String, PaymentEvent> record, Acknowledgment acknowledgment) {
+        handleRetryEvent(record, acknowledgment);
+    }
+
+    @KafkaListener(id = "payment-retry-8s", topics = KafkaConfig.RETRY_TOPIC_8S, groupId = "payment-retry-service",
+            autoStartup = "#{'" + KafkaConfig.LISTENER_MODE + "' != 'exactly-once'}")
+    public void handleRetry8s(ConsumerRecord<String, PaymentEvent> record, Acknowledgment acknowledgment) {
+        handleRetryEvent(record, acknowledgment);
+    }
+
+    // Exactly-once retry tiers: one transaction per record, covering its offset and the record it
+    // hands on to the next tier or the DLQ
+    @KafkaListener(id = "payment-retry-2s-tx", topics = KafkaConfig.RETRY_TOPIC_2S, groupId = "payment-retry-service",
+            containerFactory = "transactionalRetryContainerFactory",
+            autoStartup = "#{'" + KafkaConfig.LISTENER_MODE + "' == 'exactly-once'}")
+    public void handleRetry2sExactlyOnce(ConsumerRecord<String, PaymentEvent> record) throws InterruptedException {
+        handleRetryEventInTransaction(record);
+    }
+
+    @KafkaListener(id = "payment-retry-4s-tx", topics = KafkaConfig.RETRY_TOPIC_4S, groupId = "payment-retry-service",
+            containerFactory = "transactionalRetryContainerFactory",
+            autoStartup = "#{'" + KafkaConfig.LISTENER_MODE + "' == 'exactly-once'}")
+    public void handleRetry4sExactlyOnce(ConsumerRecord<String, PaymentEvent> record) throws InterruptedException {
+        handleRetryEventInTransaction(record);
+    }
+
+    @KafkaListener(id = "payment-retry-8s-tx", topics = KafkaConfig.RETRY_TOPIC_8S, groupId = "payment-retry-service",
+            containerFactory = "transactionalRetryContainerFactory",
+            autoStartup = "#{'" + KafkaConfig.LISTENER_MODE + "' == 'exactly-once'}")
+    public void handleRetry8sExactlyOnce(ConsumerRecord<String, PaymentEvent> record) throws InterruptedException {
+        handleRetryEventInTransaction(record);
+    }
+
     @KafkaListener(topics = KafkaConfig.DLQ_TOPIC, groupId = "payment-dlq-service")
-    public void handleDlqMessage(PaymentEvent event, Acknowledgment acknowledgment) {
-        logger.error("Processing DLQ message: {} (failed after {} attempts)",
-                event.getPaymentId(), event.getRetryCount());
+    public void handleDlqMessage(ConsumerRecord<String, PaymentEvent> record, Acknowledgment acknowledgment) {
+        PaymentEvent event = record.value();
+        FailureMetadata failure = FailureHeaders.read(record.headers());
+        String reason = failure != null ? failure.getReason() : null;
+        logger.error("Processing DLQ message: {} (failed after {} attempts: {})", event.getPaymentId(),
+                failure != null ? failure.getAttempts() : event.getRetryCount() + 1, reason);
 
         // Handle DLQ message
         // 1. Log to monitoring system
@@ -85,7 +216,7 @@ public class KafkaPaymentConsumer {
         // 4. Send notification to user
 
         try {
-            paymentService.storeFailedPaymentForReview(event);
+            paymentService.storeFailedPaymentForReview(PaymentMetrics.KAFKA, event, failure);
             acknowledgment.acknowledge();
         } catch (Exception e) {
             logger.error("Failed to store DLQ message: {}", event.getPaymentId(), e);
@@ -93,19 +224,192 @@ public class KafkaPaymentConsumer {
         }
     }
 
-    private void scheduleRetry(PaymentEvent event, long delay) {
-        // Implementation depends on your retry mechanism
-        // You could use Spring's @Scheduled, Quartz, or a separate retry topic
-        // For simplicity, using a simple delay here
+    private void handleRetryEvent(ConsumerRecord<String, PaymentEvent> record, Acknowledgment acknowledgment) {
+        PaymentEvent event = record.value();
+        long dueAt = record.timestamp() + KafkaConfig.retryDelayMs(event.getRetryCount());
+        long wait = dueAt - System.currentTimeMillis();
+
+        if (wait > 0) {
+            // Not due yet: every record in a tier has the same delay, so the head of the
+            // partition is always the next one due. Pause and redeliver instead of holding a timer.
+            acknowledgment.nack(Duration.ofMillis(wait));
+            return;
+        }
+
+        logger.info("Processing retried payment event: {} (attempt: {})",
+                event.getPaymentId(), event.getRetryCount() + 1);
+
+        processWithRetry(record, acknowledgment);
+    }
+
+    private void handleRetryEventInTransaction(ConsumerRecord<String, PaymentEvent> record)
+            throws InterruptedException {
+        PaymentEvent event = record.value();
+        long wait = record.timestamp() + KafkaConfig.retryDelayMs(event.getRetryCount()) - System.currentTimeMillis();
+        if (wait > 0) {
+            // A nack can't hand the record back inside a transaction; every record in a tier has the
+            // same delay, so waiting here for the head of the partition is no longer than a pause
+            Thread.sleep(wait);
+        }
+
+        logger.info("Processing retried payment event in a transaction: {} (attempt: {})",
+                event.getPaymentId(), event.getRetryCount() + 1);
+        try {
+            paymentService.processPayment(event);
+        } catch (Exception e) {
+            handOffInTransaction(record, e);
+        }
+    }
+
+    // Sends a failed event on within the listener's transaction; a failed send aborts it
+    private void handOffInTransaction(ConsumerRecord<String, PaymentEvent> record, Exception e) {
+        PaymentEvent event = record.value();
+        logger.error("Failed to process payment: {} (attempt: {})",
+                event.getPaymentId(), event.getRetryCount() + 1, e);
+
+        FailureMetadata metadata = failureMetadata(record, e);
+        if (event.getRetryCount() < KafkaConfig.MAX_RETRIES) {
+            event.incrementRetryCount();
+            producer.sendToRetryInTransaction(event, metadata);
+            metrics.recordRetry(PaymentMetrics.KAFKA, event.getRetryCount());
+        } else {
+            producer.sendToDlqInTransaction(record, metadata);
+            metrics.recordDeadLetter(PaymentMetrics.KAFKA, metadata.getExceptionClass());
+        }
+    }
+
+    private void processWithRetry(ConsumerRecord<String, PaymentEvent> record, Acknowledgment acknowledgment) {
+        PaymentEvent event = record.value();
+        try {
+            // Process the payment
+            paymentService.processPayment(event);
+            logger.info("Payment processed successfully: {}", event.getPaymentId());
+
+        } catch (Exception e) {
+            if (!handleFailure(record, e)) {
+                FailureMetadata failure = failureMetadata(record, e);
+                failure.setReason("Retry scheduling failed: " + e.getMessage());
+                // handleFailure already counted the retry that could not be sent
+                failure.setAttempts(event.getRetryCount());
+                if (!awaitHandOff(deadLetter(record, failure), event)) {
+                    // Neither the retry tier nor the DLQ has it: redeliver rather than drop the payment
+                    acknowledgment.nack(Duration.ofMillis(KafkaConfig.retryDelayMs(1)));
+                    return;
+                }
+            }
+        }
+
+        // Acknowledge the message
+        acknowledgment.acknowledge();
+    }
+
+    // Retries a failed hand-off in its lane instead of seeking back, which would re-run records the
+    // other lanes already finished; returns false only if interrupted before the record was handed off
+    private boolean processUntilHandedOff(ConsumerRecord<String, PaymentEvent> record) {
+        int retryCount = record.value().getRetryCount();
+        while (!process(record)) {
+            record.value().setRetryCount(retryCount);
+            try {
+                Thread.sleep(KafkaConfig.retryDelayMs(1));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Returns false if the hand-off still failed after HAND_OFF_RETRIES attempts or was interrupted
+    private boolean retryHandOff(ConsumerRecord<String, PaymentEvent> record, Exception e, int retryCount) {
+        for (int attempt = 0; attempt < HAND_OFF_RETRIES; attempt++) {
+            try {
+                Thread.sleep(KafkaConfig.retryDelayMs(1));
+            } catch (InterruptedException interrupted) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+            record.value().setRetryCount(retryCount);
+            if (handleFailure(record, e)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Returns false only if the event failed and could not be handed to the next retry tier
+    private boolean process(ConsumerRecord<String, PaymentEvent> record) {
+        try {
+            paymentService.processPayment(record.value());
+            logger.info("Payment processed successfully: {}", record.value().getPaymentId());
+            return true;
+        } catch (Exception e) {
+            return handleFailure(record, e);
+        }
+    }
+
+    // Returns false if the event could not be handed to the next retry tier
+    private boolean handleFailure(ConsumerRecord<String, PaymentEvent> record, Exception e) {
+        return awaitHandOff(handOff(record, e), record.value());
+    }
+
+    // Starts sending a failed event to the next retry tier, or to the DLQ once retries are used up
+    private CompletableFuture<Void> handOff(ConsumerRecord<String, PaymentEvent> record, Exception e) {
+        PaymentEvent event = record.value();
+        logger.error("Failed to process payment: {} (attempt: {})",
+                event.getPaymentId(), event.getRetryCount() + 1, e);
+
+        // Check if we should retry or send to DLQ
+        FailureMetadata failure = failureMetadata(record, e);
+        if (event.getRetryCount() < KafkaConfig.MAX_RETRIES) {
+            event.incrementRetryCount();
+            return scheduleRetry(event, failure);
+        }
+
+        // Max retries reached, send to DLQ
+        return deadLetter(record, failure).thenRun(() ->
+                logger.error("Payment event sent to DLQ after {} attempts: {}",
+                        event.getRetryCount() + 1, event.getPaymentId()));
+    }
+
+    private CompletableFuture<Void> scheduleRetry(PaymentEvent event, FailureMetadata failure) {
+        int attempt = event.getRetryCount();
+        return send(() -> producer.sendToRetry(event, failure)).thenRun(() -> {
+            metrics.recordRetry(PaymentMetrics.KAFKA, attempt);
+            logger.info("Payment event scheduled for retry after {} ms", KafkaConfig.retryDelayMs(attempt));
+        });
+    }
+
+    private CompletableFuture<Void> deadLetter(ConsumerRecord<String, PaymentEvent> record, FailureMetadata failure) {
+        return send(() -> producer.sendToDlq(record, failure))
+                .thenRun(() -> metrics.recordDeadLetter(PaymentMetrics.KAFKA, failure.getExceptionClass()));
+    }
+
+    // A send that throws before returning its future fails the hand-off like a failed send
+    private static CompletableFuture<?> send(Supplier<CompletableFuture<?>> send) {
+        try {
+            return send.get();
+        } catch (Exception e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    // Waits for the broker so the offset is only committed once the retry or DLQ record is durable
+    private boolean awaitHandOff(CompletableFuture<Void> handOff, PaymentEvent event) {
+        try {
+            handOff.get(SEND_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            return true;
+        } catch (Exception e) {
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            logger.error("Failed to hand off payment: {}", event.getPaymentId(), e);
+            return false;
+        }
+    }
 
-        CompletableFuture.delayedExecutor(delay, TimeUnit.MILLISECONDS)
-                .execute(() -> {
-                    try {
-                        producer.sendPaymentEvent(event);
-                    } catch (Exception e) {
-                        logger.error("Failed to send retry message: {}", event.getPaymentId(), e);
-                        producer.sendToDlq(event, "Retry scheduling failed: " + e.getMessage());
-                    }
-                });
+    // Carries over where and when the payment first failed from earlier attempts
+    private static FailureMetadata failureMetadata(ConsumerRecord<String, PaymentEvent> record, Exception e) {
+        return FailureMetadata.of(FailureHeaders.read(record.headers()),
+                record.topic(), record.partition(), record.offset(), e, record.value().getRetryCount() + 1);
     }
 }
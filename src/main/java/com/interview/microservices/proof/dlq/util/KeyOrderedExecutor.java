@@ -0,0 +1,42 @@
+package com.interview.microservices.proof.dlq.util;
+
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+// Worker pool that runs tasks in parallel across keys but strictly in submission order per key
+public class KeyOrderedExecutor {
+
+    private final ExecutorService[] lanes;
+
+    public KeyOrderedExecutor(int laneCount, String threadNamePrefix) {
+        this.lanes = new ExecutorService[laneCount];
+        AtomicInteger threadIndex = new AtomicInteger();
+        for (int i = 0; i < laneCount; i++) {
+            lanes[i] = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, threadNamePrefix + threadIndex.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    public <T> CompletableFuture<T> submit(Object key, Supplier<T> task) {
+        // Same key -> same single-threaded lane, so per-key ordering is preserved
+        int lane = Math.floorMod(Objects.hashCode(key), lanes.length);
+        return CompletableFuture.supplyAsync(task, lanes[lane]);
+    }
+
+    public void shutdown() throws InterruptedException {
+        for (ExecutorService lane : lanes) {
+            lane.shutdown();
+        }
+        for (ExecutorService lane : lanes) {
+            lane.awaitTermination(30, TimeUnit.SECONDS);
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package com.interview.microservices.proof.dlq.util;
+
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.kafka.listener.ConsumerAwareRebalanceListener;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Tracks records handed to worker lanes, per partition, so each partition can be committed up to
+ * (never past) its oldest record still in flight, whatever order the lanes finish in. Partitions
+ * with too much in flight are paused rather than blocking the poll. Everything except
+ * {@link #complete} must be called on the consumer thread.
+ */
+public class OffsetTracker implements ConsumerAwareRebalanceListener {
+
+    private final Logger logger = LoggerFactory.getLogger(OffsetTracker.class);
+    private final int maxPendingPerPartition;
+    private final ConcurrentMap<TopicPartition, PartitionOffsets> partitions = new ConcurrentHashMap<>();
+
+    public OffsetTracker(int maxPendingPerPartition) {
+        this.maxPendingPerPartition = maxPendingPerPartition;
+    }
+
+    public void track(TopicPartition partition, long offset) {
+        partitions.computeIfAbsent(partition, p -> new PartitionOffsets()).track(offset);
+    }
+
+    // Called from the worker lanes once a record is processed or durably handed off
+    public void complete(TopicPartition partition, long offset) {
+        PartitionOffsets offsets = partitions.get(partition);
+        if (offsets != null) {
+            offsets.complete(offset);
+        }
+    }
+
+    // Commits what has finished, pauses partitions with too much in flight and resumes the ones
+    // that caught up
+    public void sync(Consumer<?, ?> consumer) {
+        Map<TopicPartition, OffsetAndMetadata> commits = new HashMap<>();
+        List<TopicPartition> toPause = new ArrayList<>();
+        List<TopicPartition> toResume = new ArrayList<>();
+        for (TopicPartition partition : consumer.assignment()) {
+            PartitionOffsets offsets = partitions.get(partition);
+            if (offsets == null) {
+                continue;
+            }
+            long next = offsets.drainCompleted();
+            if (next >= 0) {
+                commits.put(partition, new OffsetAndMetadata(next));
+            }
+            int pending = offsets.pending();
+            if (!offsets.paused && pending >= maxPendingPerPartition) {
+                offsets.paused = true;
+                toPause.add(partition);
+            } else if (offsets.paused && pending <= maxPendingPerPartition / 2) {
+                offsets.paused = false;
+                toResume.add(partition);
+            }
+        }
+
+        if (!commits.isEmpty()) {
+            consumer.commitAsync(commits, (offsets, e) -> {
+                if (e != null) {
+                    // A later commit covers these offsets; at worst they are redelivered and skipped
+                    logger.warn("Failed to commit offsets {}", offsets, e);
+                }
+            });
+        }
+        if (!toPause.isEmpty()) {
+            consumer.pause(toPause);
+            logger.info("Paused {}: {} or more records in flight", toPause, maxPendingPerPartition);
+        }
+        if (!toResume.isEmpty()) {
+            consumer.resume(toResume);
+        }
+    }
+
+    @Override
+    public void onPartitionsRevokedBeforeCommit(Consumer<?, ?> consumer, Collection<TopicPartition> revoked) {
+        // Last chance to commit what finished; whatever is still in flight gets redelivered to the new owner
+        Map<TopicPartition, OffsetAndMetadata> commits = new HashMap<>();
+        for (TopicPartition partition : revoked) {
+            PartitionOffsets offsets = partitions.remove(partition);
+            long next = offsets != null ? offsets.drainCompleted() : -1;
+            if (next >= 0) {
+                commits.put(partition, new OffsetAndMetadata(next));
+            }
+        }
+        if (!commits.isEmpty()) {
+            try {
+                consumer.commitSync(commits);
+            } catch (Exception e) {
+                logger.warn("Failed to commit offsets of revoked partitions {}", commits.keySet(), e);
+            }
+        }
+    }
+
+    @Override
+    public void onPartitionsLost(Consumer<?, ?> consumer, Collection<TopicPartition> lost) {
+        lost.forEach(partitions::remove);
+    }
+
+    // Offsets handed out on one partition, in order, each marked once its record is done
+    private static final class PartitionOffsets {
+
+        private final TreeMap<Long, Boolean> offsets = new TreeMap<>();
+        boolean paused; // consumer thread only
+
+        synchronized void track(long offset) {
+            offsets.putIfAbsent(offset, Boolean.FALSE);
+        }
+
+        synchronized void complete(long offset) {
+            offsets.replace(offset, Boolean.TRUE);
+        }
+
+        synchronized int pending() {
+            return offsets.size();
+        }
+
+        // Drops the finished records at the head; returns the offset to commit, or -1 if the head is
+        // still running
+        synchronized long drainCompleted() {
+            long next = -1;
+            while (!offsets.isEmpty() && offsets.firstEntry().getValue()) {
+                next = offsets.pollFirstEntry().getKey() + 1;
+            }
+            return next;
+        }
+    }
+}
@@ -1,36 +1,57 @@
 package com.interview.microservices.proof.dlq.util;
 
+import com.interview.microservices.proof.dlq.config.FailureHeaders;
 import com.interview.microservices.proof.dlq.config.RabbitMQConfig;
+import com.interview.microservices.proof.dlq.model.FailureMetadata;
 import com.interview.microservices.proof.dlq.model.PaymentEvent;
 import com.interview.microservices.proof.dlq.service.PaymentService;
 import com.rabbitmq.client.Channel;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.amqp.AmqpException;
+import org.springframework.amqp.core.Message;
 import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
 import org.springframework.amqp.support.AmqpHeaders;
+import org.springframework.amqp.support.converter.MessageConversionException;
 import org.springframework.messaging.handler.annotation.Header;
+import org.springframework.messaging.handler.annotation.Headers;
 import org.springframework.stereotype.Component;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 // 4. RabbitMQ Message Consumer with DLQ handling
 @Component
 public class PaymentEventConsumer {
 
+    private static final long CONFIRM_TIMEOUT_SECONDS = 10;
+
     private final Logger logger = LoggerFactory.getLogger(PaymentEventConsumer.class);
     private final PaymentService paymentService;
     private final RabbitTemplate rabbitTemplate;
+    private final PaymentMetrics metrics;
 
-    public PaymentEventConsumer(PaymentService paymentService, RabbitTemplate rabbitTemplate) {
+    public PaymentEventConsumer(PaymentService paymentService, RabbitTemplate rabbitTemplate, PaymentMetrics metrics) {
         this.paymentService = paymentService;
         this.rabbitTemplate = rabbitTemplate;
+        this.metrics = metrics;
     }
 
-    @RabbitListener(queues = RabbitMQConfig.MAIN_QUEUE)
+    @RabbitListener(queues = RabbitMQConfig.MAIN_QUEUE,
+            autoStartup = "#{'" + RabbitMQConfig.LISTENER_MODE + "' == 'record'}")
     public void handlePaymentEvent(PaymentEvent event,
-                                   @Header Map<String, Object> headers,
+                                   Message message,
                                    Channel channel,
                                    @Header(AmqpHeaders.DELIVERY_TAG) long deliveryTag) {
 
@@ -50,31 +71,13 @@ public class PaymentEventConsumer {
                     event.getPaymentId(), event.getRetryCount() + 1, e);
 
             try {
-                // Check if we should retry or send to DLQ
-                if (event.getRetryCount() < 3) {
-                    event.incrementRetryCount();
-
-                    // Requeue with delay (exponential backoff)
-                    long delay = (long) Math.pow(2, event.getRetryCount()) * 1000;
-
-                    rabbitTemplate.convertAndSend(
-                            RabbitMQConfig.MAIN_EXCHANGE,
-                            "payment.process",
-                            event,
-                            message -> {
-                                message.getMessageProperties().setDelayLong( delay);
-                                return message;
-                            }
-                    );
-
+                // Retry or send to DLQ; the original is only acked once the broker confirmed the copy
+                FailureMetadata failure = failureMetadata(message, event, e);
+                if (handOff(List.of(new FailedMessage(message, event, failure))).isEmpty()) {
                     channel.basicAck(deliveryTag, false);
-                    logger.info("Payment event requeued with delay: {} ms", delay);
-
                 } else {
-                    // Max retries reached, let it go to DLQ
                     channel.basicNack(deliveryTag, false, false);
-                    logger.error("Payment event sent to DLQ after {} attempts: {}",
-                            event.getRetryCount() + 1, event.getPaymentId());
+                    metrics.recordDeadLetter(PaymentMetrics.RABBIT, failure.getExceptionClass());
                 }
 
             } catch (IOException ioException) {
@@ -83,10 +86,81 @@ public class PaymentEventConsumer {
         }
     }
 
+    @RabbitListener(queues = RabbitMQConfig.MAIN_QUEUE,
+            containerFactory = "batchRabbitListenerContainerFactory",
+            autoStartup = "#{'" + RabbitMQConfig.LISTENER_MODE + "' == 'batch'}")
+    public void handlePaymentBatch(List<Message> batch, Channel channel) throws IOException {
+        // Converted one by one, so a message that can't be read is dead-lettered on its own
+        // instead of failing the whole batch
+        List<Message> messages = new ArrayList<>(batch.size());
+        List<PaymentEvent> events = new ArrayList<>(batch.size());
+        for (Message message : batch) {
+            try {
+                events.add((PaymentEvent) rabbitTemplate.getMessageConverter().fromMessage(message));
+                messages.add(message);
+            } catch (MessageConversionException | ClassCastException e) {
+                logger.error("Dead-lettering unreadable message {}", deliveryTag(message), e);
+                channel.basicNack(deliveryTag(message), false, false);
+                metrics.recordDeadLetter(PaymentMetrics.RABBIT, e.getClass().getName());
+            }
+        }
+        if (messages.isEmpty()) {
+            return;
+        }
+
+        logger.info("Processing payment batch of {} events", events.size());
+
+        Map<Integer, Exception> failures;
+        try {
+            failures = paymentService.processPayments(events);
+        } catch (Exception e) {
+            // The whole batch failed: every message goes down the retry ladder, so it comes back
+            // after a backoff instead of being redelivered straight away
+            logger.error("Failed to process payment batch of {} events", events.size(), e);
+            failures = new LinkedHashMap<>();
+            for (int i = 0; i < events.size(); i++) {
+                failures.put(i, e);
+            }
+        }
+
+        List<FailedMessage> failed = new ArrayList<>(failures.size());
+        for (Map.Entry<Integer, Exception> failure : failures.entrySet()) {
+            Message message = messages.get(failure.getKey());
+            PaymentEvent event = events.get(failure.getKey());
+            logger.error("Failed to process payment: {} (attempt: {})",
+                    event.getPaymentId(), event.getRetryCount() + 1, failure.getValue());
+            failed.add(new FailedMessage(message, event, failureMetadata(message, event, failure.getValue())));
+        }
+
+        // Retried and dead-lettered failures are covered by the cumulative ack below;
+        // only those that could not be republished are settled one by one
+        Set<Long> nacked = new HashSet<>();
+        for (FailedMessage unhandled : handOff(failed)) {
+            channel.basicNack(deliveryTag(unhandled.message()), false, false);
+            nacked.add(deliveryTag(unhandled.message()));
+            metrics.recordDeadLetter(PaymentMetrics.RABBIT, unhandled.failure().getExceptionClass());
+        }
+
+        // One ack for everything else in the batch, up to the last tag still outstanding
+        for (int i = messages.size() - 1; i >= 0; i--) {
+            long tag = deliveryTag(messages.get(i));
+            if (!nacked.contains(tag)) {
+                channel.basicAck(tag, true);
+                return;
+            }
+        }
+    }
+
     @RabbitListener(queues = RabbitMQConfig.DLQ_QUEUE)
-    public void handleDlqMessage(PaymentEvent event) {
-        logger.error("Processing DLQ message: {} (failed after {} attempts)",
-                event.getPaymentId(), event.getRetryCount());
+    public void handleDlqMessage(PaymentEvent event,
+                                 Message message,
+                                 @Headers Map<String, Object> headers,
+                                 Channel channel,
+                                 @Header(AmqpHeaders.DELIVERY_TAG) long deliveryTag) throws IOException {
+        FailureMetadata failure = FailureHeaders.fromMap(headers);
+        logger.error("Processing DLQ message: {} (failed after {} attempts: {})", event.getPaymentId(),
+                failure != null ? failure.getAttempts() : event.getRetryCount() + 1,
+                failure != null ? failure.getReason() : null);
 
         // Here you can:
         // 1. Log to monitoring system
@@ -94,7 +168,137 @@ public class PaymentEventConsumer {
         // 3. Store in database for manual review
         // 4. Send notification to user
 
-        // Example: Store failed payment for manual review
-        paymentService.storeFailedPaymentForReview(event);
+        // Example: Store failed payment for manual review. The container acks manually, so every
+        // message must be settled here or it holds a prefetch slot until the channel closes.
+        try {
+            paymentService.storeFailedPaymentForReview(PaymentMetrics.RABBIT, event, failure);
+        } catch (Exception e) {
+            logger.error("Failed to store DLQ message {} for review, requeueing it", event.getPaymentId(), e);
+            channel.basicNack(deliveryTag, false, true);
+            return;
+        }
+
+        // Redrive reads payment.dlq.archive, so the message only leaves payment.dlq once the broker
+        // confirmed its copy there; a requeued message is stored again, superseding the first record
+        if (!archive(event.getPaymentId(), message).join()) {
+            channel.basicNack(deliveryTag, false, true);
+            return;
+        }
+        channel.basicAck(deliveryTag, false);
+    }
+
+    /**
+     * Republishes failed messages to their next retry queue, or to the DLQ once retries are used up
+     * or the retry could not be published, and waits for the broker to confirm each copy. All
+     * publishing happens on the calling thread; confirms are only awaited.
+     *
+     * @return the messages that could be neither retried nor dead-lettered
+     */
+    private List<FailedMessage> handOff(List<FailedMessage> failed) {
+        Map<FailedMessage, CompletableFuture<Boolean>> retries = new LinkedHashMap<>();
+        List<FailedMessage> toDeadLetter = new ArrayList<>();
+        for (FailedMessage message : failed) {
+            if (message.event().getRetryCount() < RabbitMQConfig.MAX_RETRIES) {
+                retries.put(message, scheduleRetry(message.event(), message.failure()));
+            } else {
+                toDeadLetter.add(message);
+            }
+        }
+        retries.forEach((message, confirmed) -> {
+            if (!confirmed.join()) {
+                toDeadLetter.add(message);
+            }
+        });
+
+        Map<FailedMessage, CompletableFuture<Boolean>> deadLetters = new LinkedHashMap<>();
+        toDeadLetter.forEach(message -> deadLetters.put(message, deadLetter(message)));
+        List<FailedMessage> unhandled = new ArrayList<>();
+        deadLetters.forEach((message, confirmed) -> {
+            if (!confirmed.join()) {
+                unhandled.add(message);
+            }
+        });
+        return unhandled;
+    }
+
+    private CompletableFuture<Boolean> scheduleRetry(PaymentEvent event, FailureMetadata failure) {
+        event.incrementRetryCount();
+        int attempt = event.getRetryCount();
+
+        // Park it in the wait queue for this attempt; the broker dead-letters it back
+        // to payments.exchange once the queue TTL expires (exponential backoff)
+        return publish(event.getPaymentId(), correlation -> rabbitTemplate.convertAndSend(
+                RabbitMQConfig.RETRY_EXCHANGE,
+                RabbitMQConfig.retryRoutingKey(attempt),
+                event,
+                retryMessage -> {
+                    retryMessage.getMessageProperties().getHeaders().putAll(FailureHeaders.toMap(failure));
+                    return retryMessage;
+                },
+                correlation
+        )).thenApply(confirmed -> {
+            if (confirmed) {
+                metrics.recordRetry(PaymentMetrics.RABBIT, attempt);
+                logger.info("Payment event requeued with delay: {} ms", RabbitMQConfig.retryDelayMs(attempt));
+            }
+            return confirmed;
+        });
+    }
+
+    // Dead-letters the message as received, plus the failure headers; a plain nack would drop them
+    private CompletableFuture<Boolean> deadLetter(FailedMessage failed) {
+        Message message = failed.message();
+        message.getMessageProperties().getHeaders().putAll(FailureHeaders.toMap(failed.failure()));
+        return publish(failed.event().getPaymentId(), correlation ->
+                rabbitTemplate.send(RabbitMQConfig.DLX_EXCHANGE, RabbitMQConfig.DLQ_ROUTING_KEY, message, correlation)
+        ).thenApply(confirmed -> {
+            if (confirmed) {
+                metrics.recordDeadLetter(PaymentMetrics.RABBIT, failed.failure().getExceptionClass());
+                logger.error("Payment event sent to DLQ after {} attempts: {}",
+                        failed.failure().getAttempts(), failed.event().getPaymentId());
+            }
+            return confirmed;
+        });
+    }
+
+    private CompletableFuture<Boolean> archive(String paymentId, Message message) {
+        return publish(paymentId, correlation -> rabbitTemplate.send(
+                RabbitMQConfig.DLX_EXCHANGE, RabbitMQConfig.DLQ_ARCHIVE_ROUTING_KEY, message, correlation));
     }
-}
\ No newline at end of file
+
+    // Completes with true once the broker confirmed the message; a failed publish, a nack, an
+    // unroutable return and a confirm timeout all complete with false
+    private CompletableFuture<Boolean> publish(String paymentId, Consumer<CorrelationData> send) {
+        CorrelationData correlation = new CorrelationData(paymentId + ":" + UUID.randomUUID());
+        try {
+            send.accept(correlation);
+        } catch (AmqpException e) {
+            logger.error("Failed to republish payment event {}", paymentId, e);
+            return CompletableFuture.completedFuture(false);
+        }
+        return correlation.getFuture()
+                .thenApply(confirm -> {
+                    if (!confirm.isAck() || correlation.getReturned() != null) {
+                        logger.error("Republished payment event {} was not confirmed: {}", paymentId,
+                                correlation.getReturned() != null ? correlation.getReturned().getReplyText()
+                                        : confirm.getReason());
+                        return false;
+                    }
+                    return true;
+                })
+                .completeOnTimeout(false, CONFIRM_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                .exceptionally(ex -> false);
+    }
+
+    // Carries over where and when the payment first failed from earlier attempts
+    private static FailureMetadata failureMetadata(Message message, PaymentEvent event, Exception e) {
+        return FailureMetadata.of(FailureHeaders.fromMap(message.getMessageProperties().getHeaders()),
+                message.getMessageProperties().getConsumerQueue(), null, null, e, event.getRetryCount() + 1);
+    }
+
+    private static long deliveryTag(Message message) {
+        return message.getMessageProperties().getDeliveryTag();
+    }
+
+    private record FailedMessage(Message message, PaymentEvent event, FailureMetadata failure) {}
+}
@@ -0,0 +1,118 @@
+package com.interview.microservices.proof.dlq.util;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Meters for the payment pipeline. Meters are resolved once and cached here so the hot path
+ * never goes through a registry lookup, and every tag has a bounded set of values: topics and
+ * outcomes are fixed, and failure reasons are exception class names capped at
+ * {@value #MAX_REASONS} per broker, with the rest reported as {@value #OTHER}.
+ */
+@Component
+public class PaymentMetrics {
+
+    public static final String KAFKA = "kafka";
+    public static final String RABBIT = "rabbit";
+
+    static final int MAX_REASONS = 20;
+    static final String OTHER = "other";
+
+    private final MeterRegistry registry;
+    private final Timer processSuccess;
+    private final Timer processFailure;
+    private final Timer processDuplicate;
+    private final Timer processBatch;
+    private final ConcurrentMap<String, Counter> retries = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, ConcurrentMap<String, Counter>> deadLetters = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Timer> sends = new ConcurrentHashMap<>();
+
+    public PaymentMetrics(MeterRegistry registry) {
+        this.registry = registry;
+        this.processSuccess = processTimer("success");
+        this.processFailure = processTimer("failure");
+        this.processDuplicate = processTimer("duplicate");
+        this.processBatch = Timer.builder("payment.process.batch")
+                .description("Bulk processing time of a payment batch")
+                .publishPercentileHistogram()
+                .minimumExpectedValue(Duration.ofMillis(1))
+                .maximumExpectedValue(Duration.ofSeconds(30))
+                .register(registry);
+    }
+
+    public void recordProcessing(long startNanos, boolean success) {
+        (success ? processSuccess : processFailure).record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordDuplicate(long startNanos) {
+        processDuplicate.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordBatch(long startNanos) {
+        processBatch.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    // attempt is the retry tier the payment was sent to (1-based)
+    public void recordRetry(String broker, int attempt) {
+        retries.computeIfAbsent(broker + ":" + attempt, key -> Counter.builder("payment.retries")
+                        .description("Payments handed to a retry tier")
+                        .tag("broker", broker)
+                        .tag("attempt", String.valueOf(attempt))
+                        .register(registry))
+                .increment();
+    }
+
+    public void recordDeadLetter(String broker, String exceptionClass) {
+        ConcurrentMap<String, Counter> byReason = deadLetters.computeIfAbsent(broker, key -> new ConcurrentHashMap<>());
+        String reason = exceptionClass == null ? OTHER : exceptionClass.substring(exceptionClass.lastIndexOf('.') + 1);
+        Counter counter = byReason.get(reason);
+        if (counter == null) {
+            String tag = byReason.size() < MAX_REASONS ? reason : OTHER;
+            counter = byReason.computeIfAbsent(tag, key -> Counter.builder("payment.dead.letters")
+                    .description("Payments sent to the DLQ, by failure reason")
+                    .tag("broker", broker)
+                    .tag("reason", key)
+                    .register(registry));
+        }
+        counter.increment();
+    }
+
+    // Kafka send latency up to the broker ack; topic is one of the fixed payment topics
+    public void recordSend(String topic, long startNanos, boolean success) {
+        timer(sends, "payment.kafka.send", topic, success)
+                .record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    // RabbitMQ publish latency up to the publisher confirm
+    public void recordPublish(long startNanos, boolean confirmed) {
+        timer(sends, "payment.rabbit.publish", "payments.exchange", confirmed)
+                .record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    private Timer timer(Map<String, Timer> cache, String name, String destination, boolean success) {
+        String outcome = success ? "success" : "failure";
+        return cache.computeIfAbsent(name + ":" + destination + ":" + outcome, key -> Timer.builder(name)
+                .tag("destination", destination)
+                .tag("outcome", outcome)
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .register(registry));
+    }
+
+    private Timer processTimer(String outcome) {
+        return Timer.builder("payment.process")
+                .description("Time to process a single payment")
+                .tag("outcome", outcome)
+                .publishPercentileHistogram()
+                .minimumExpectedValue(Duration.ofMillis(1))
+                .maximumExpectedValue(Duration.ofSeconds(10))
+                .register(registry);
+    }
+}
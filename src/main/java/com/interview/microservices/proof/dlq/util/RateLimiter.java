@@ -0,0 +1,28 @@
+package com.interview.microservices.proof.dlq.util;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Evenly spaced permits at a fixed rate. Unused time is not banked, so a caller that was idle
+ * gets no burst afterwards.
+ */
+public class RateLimiter {
+
+    private final long intervalNanos;
+    private long nextFreeNanos = System.nanoTime();
+
+    public RateLimiter(double permitsPerSecond) {
+        if (permitsPerSecond <= 0) {
+            throw new IllegalArgumentException("permitsPerSecond must be positive");
+        }
+        this.intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / permitsPerSecond);
+    }
+
+    public synchronized void acquire() throws InterruptedException {
+        long now = System.nanoTime();
+        if (nextFreeNanos > now) {
+            TimeUnit.NANOSECONDS.sleep(nextFreeNanos - now);
+        }
+        nextFreeNanos = Math.max(nextFreeNanos, now) + intervalNanos;
+    }
+}
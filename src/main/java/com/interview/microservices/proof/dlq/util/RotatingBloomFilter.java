@@ -0,0 +1,57 @@
+package com.interview.microservices.proof.dlq.util;
+
+import java.time.Duration;
+import java.util.function.LongSupplier;
+
+// Two generations of Bloom filters that approximate expiry: a value stays in the filter for
+// between one and two generations, then drops out once the generation it was put in is retired
+public class RotatingBloomFilter {
+
+    private final int expectedInsertions;
+    private final double falsePositiveRate;
+    private final long generationMillis;
+    private final LongSupplier clock;
+
+    private volatile BloomFilter current;
+    private volatile BloomFilter previous;
+    private volatile long rotateAt;
+
+    public RotatingBloomFilter(int expectedInsertions, double falsePositiveRate, Duration generation) {
+        this(expectedInsertions, falsePositiveRate, generation, System::currentTimeMillis);
+    }
+
+    RotatingBloomFilter(int expectedInsertions, double falsePositiveRate, Duration generation, LongSupplier clock) {
+        this.expectedInsertions = expectedInsertions;
+        this.falsePositiveRate = falsePositiveRate;
+        this.generationMillis = generation.toMillis();
+        this.clock = clock;
+        this.current = new BloomFilter(expectedInsertions, falsePositiveRate);
+        this.previous = new BloomFilter(expectedInsertions, falsePositiveRate);
+        this.rotateAt = clock.getAsLong() + generationMillis;
+    }
+
+    public void put(String value) {
+        rotateIfDue();
+        current.put(value);
+    }
+
+    public boolean mightContain(String value) {
+        rotateIfDue();
+        return current.mightContain(value) || previous.mightContain(value);
+    }
+
+    private void rotateIfDue() {
+        if (clock.getAsLong() >= rotateAt) {
+            synchronized (this) {
+                long now = clock.getAsLong();
+                if (now >= rotateAt) {
+                    // After a whole idle generation the current filter has expired as well
+                    previous = now - rotateAt < generationMillis
+                            ? current : new BloomFilter(expectedInsertions, falsePositiveRate);
+                    current = new BloomFilter(expectedInsertions, falsePositiveRate);
+                    rotateAt = now + generationMillis;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package com.interview.microservices.proof.circuitBreaker.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AdaptiveConcurrencyLimiterTest {
+
+    private static final Duration TIMEOUT = Duration.ofSeconds(3);
+    private static final long FAST = TimeUnit.MILLISECONDS.toNanos(10);
+
+    private final AtomicLong now = new AtomicLong(1_000_000);
+
+    @Test
+    void rejectsCallsOverTheLimitUntilOneIsReleased() {
+        AdaptiveConcurrencyLimiter limiter = limiter(2, 1, 10);
+        AdaptiveConcurrencyLimiter.Permit first = limiter.tryAcquire();
+        AdaptiveConcurrencyLimiter.Permit second = limiter.tryAcquire();
+
+        assertThat(first).isNotNull();
+        assertThat(second).isNotNull();
+        assertThat(limiter.tryAcquire()).isNull();
+        assertThat(limiter.getRejected()).isEqualTo(1);
+
+        first.release(true);
+        assertThat(limiter.getInFlight()).isEqualTo(1);
+        assertThat(limiter.tryAcquire()).isNotNull();
+    }
+
+    @Test
+    void releasingTwiceCountsOnce() {
+        AdaptiveConcurrencyLimiter limiter = limiter(2, 1, 10);
+        AdaptiveConcurrencyLimiter.Permit permit = limiter.tryAcquire();
+
+        permit.release(true);
+        permit.release(true);
+
+        assertThat(limiter.getInFlight()).isZero();
+    }
+
+    @Test
+    void shrinksTheLimitWhenACallTimesOut() {
+        AdaptiveConcurrencyLimiter limiter = limiter(20, 4, 100);
+
+        call(limiter, TIMEOUT.toNanos(), false);
+
+        assertThat(limiter.getLimit()).isEqualTo(18);
+    }
+
+    @Test
+    void neverShrinksBelowTheMinimum() {
+        AdaptiveConcurrencyLimiter limiter = limiter(5, 4, 100);
+
+        for (int i = 0; i < 5; i++) {
+            call(limiter, TIMEOUT.toNanos(), false);
+        }
+
+        assertThat(limiter.getLimit()).isEqualTo(4);
+    }
+
+    @Test
+    void leavesTheLimitAloneOnFastFailures() {
+        AdaptiveConcurrencyLimiter limiter = limiter(20, 4, 100);
+
+        for (int i = 0; i < 10; i++) {
+            call(limiter, FAST, false);
+        }
+
+        assertThat(limiter.getLimit()).isEqualTo(20);
+    }
+
+    @Test
+    void shrinksTheLimitAsLatencyRises() {
+        AdaptiveConcurrencyLimiter limiter = limiter(20, 4, 100);
+        call(limiter, FAST, true);
+
+        call(limiter, 4 * FAST, true);
+
+        assertThat(limiter.getLimit()).isLessThan(20);
+    }
+
+    @Test
+    void growsTheLimitWhileLatencyIsFlatAndCallersFillIt() {
+        AdaptiveConcurrencyLimiter limiter = limiter(4, 1, 100);
+
+        for (int round = 0; round < 10; round++) {
+            List<AdaptiveConcurrencyLimiter.Permit> permits = new ArrayList<>();
+            AdaptiveConcurrencyLimiter.Permit permit;
+            while ((permit = limiter.tryAcquire()) != null) {
+                permits.add(permit);
+            }
+            now.addAndGet(FAST);
+            permits.forEach(p -> p.release(true));
+        }
+
+        assertThat(limiter.getLimit()).isGreaterThan(4);
+    }
+
+    @Test
+    void doesNotGrowWhileMostOfTheLimitIsUnused() {
+        AdaptiveConcurrencyLimiter limiter = limiter(20, 4, 100);
+
+        for (int i = 0; i < 50; i++) {
+            call(limiter, FAST, true);
+        }
+
+        assertThat(limiter.getLimit()).isEqualTo(20);
+    }
+
+    private AdaptiveConcurrencyLimiter limiter(int initialLimit, int minLimit, int maxLimit) {
+        return new AdaptiveConcurrencyLimiter(initialLimit, minLimit, maxLimit, 0.2, 1.5, 0.9, TIMEOUT, now::get);
+    }
+
+    // One call on its own that takes latencyNanos
+    private void call(AdaptiveConcurrencyLimiter limiter, long latencyNanos, boolean success) {
+        AdaptiveConcurrencyLimiter.Permit permit = limiter.tryAcquire();
+        assertThat(permit).isNotNull();
+        now.addAndGet(latencyNanos);
+        permit.release(success);
+    }
+}
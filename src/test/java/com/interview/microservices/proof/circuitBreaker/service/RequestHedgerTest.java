@@ -0,0 +1,284 @@
+package com.interview.microservices.proof.circuitBreaker.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RequestHedgerTest {
+
+    private static final long LATENCY = TimeUnit.MILLISECONDS.toNanos(5);
+    // Enough successful calls for the first percentile to be computed
+    private static final int WARM_UP_CALLS = 128;
+
+    private final AtomicLong now = new AtomicLong(1_000_000);
+    private final ManualTimer timer = new ManualTimer();
+    private final List<CompletableFuture<String>> attempts = new ArrayList<>();
+
+    @AfterEach
+    void shutDown() {
+        timer.shutdownNow();
+    }
+
+    @Test
+    void doesNotHedgeBeforeThereAreEnoughSamples() {
+        RequestHedger hedger = hedger(2);
+
+        CompletableFuture<String> result = hedger.execute(this::attempt);
+
+        assertThat(timer.scheduled).isEmpty();
+        attempts.get(0).complete("primary");
+        assertThat(result).isCompletedWithValue("primary");
+    }
+
+    @Test
+    void startsTheHedgeOnlyOnceThePercentileDelayIsUp() {
+        RequestHedger hedger = warmedUp(hedger(2));
+
+        hedger.execute(this::attempt);
+
+        assertThat(timer.last().delayNanos).isEqualTo(LATENCY);
+        assertThat(attempts).hasSize(1);
+        timer.last().fire();
+        assertThat(attempts).hasSize(2);
+        assertThat(hedger.getHedged()).isEqualTo(1);
+    }
+
+    @Test
+    void primaryFinishingFirstCancelsTheHedgeTimer() {
+        RequestHedger hedger = warmedUp(hedger(2));
+
+        CompletableFuture<String> result = hedger.execute(this::attempt);
+        attempts.get(0).complete("primary");
+
+        assertThat(result).isCompletedWithValue("primary");
+        assertThat(timer.last().isCancelled()).isTrue();
+        timer.last().fire();
+        assertThat(attempts).hasSize(1);
+    }
+
+    @Test
+    void hedgeWinningCancelsThePrimary() {
+        RequestHedger hedger = warmedUp(hedger(2));
+
+        CompletableFuture<String> result = hedger.execute(this::attempt);
+        timer.last().fire();
+        attempts.get(1).complete("hedge");
+
+        assertThat(result).isCompletedWithValue("hedge");
+        assertThat(attempts.get(0)).isCancelled();
+        assertThat(hedger.getHedgeWins()).isEqualTo(1);
+    }
+
+    @Test
+    void primaryWinningCancelsTheHedge() {
+        RequestHedger hedger = warmedUp(hedger(2));
+
+        CompletableFuture<String> result = hedger.execute(this::attempt);
+        timer.last().fire();
+        attempts.get(0).complete("primary");
+
+        assertThat(result).isCompletedWithValue("primary");
+        assertThat(attempts.get(1)).isCancelled();
+        assertThat(hedger.getHedgeWins()).isZero();
+    }
+
+    @Test
+    void succeedsIfEitherAttemptDoes() {
+        RequestHedger hedger = warmedUp(hedger(2));
+
+        CompletableFuture<String> result = hedger.execute(this::attempt);
+        timer.last().fire();
+        attempts.get(0).completeExceptionally(new IllegalStateException("primary failed"));
+
+        assertThat(result).isNotDone();
+        attempts.get(1).complete("hedge");
+        assertThat(result).isCompletedWithValue("hedge");
+    }
+
+    @Test
+    void failsOnlyOnceBothAttemptsHaveFailed() {
+        RequestHedger hedger = warmedUp(hedger(2));
+
+        CompletableFuture<String> result = hedger.execute(this::attempt);
+        timer.last().fire();
+        attempts.get(1).completeExceptionally(new IllegalStateException("hedge failed"));
+        assertThat(result).isNotDone();
+
+        attempts.get(0).completeExceptionally(new IllegalStateException("primary failed"));
+        assertThat(result).isCompletedExceptionally();
+    }
+
+    @Test
+    void stopsHedgingOnceTheBudgetIsSpent() {
+        // Two hedges of budget; each call only adds a tenth of one back
+        RequestHedger hedger = warmedUp(hedger(2));
+
+        for (int i = 0; i < 3; i++) {
+            hedger.execute(this::attempt);
+            timer.last().fire();
+        }
+
+        assertThat(hedger.getHedged()).isEqualTo(2);
+        assertThat(attempts).hasSize(5);
+    }
+
+    @Test
+    void earnsHedgesBackFromCalls() {
+        RequestHedger hedger = warmedUp(hedger(1));
+        hedger.execute(this::attempt);
+        timer.last().fire();
+
+        // Nine calls make 0.9 of a hedge, the tenth completes it
+        for (int i = 0; i < 9; i++) {
+            hedger.execute(this::attempt);
+        }
+        hedger.execute(this::attempt);
+        timer.last().fire();
+
+        assertThat(hedger.getHedged()).isEqualTo(2);
+    }
+
+    @Test
+    void refundsTheBudgetWhenTheHedgeCannotStart() {
+        RequestHedger hedger = warmedUp(hedger(1));
+        CompletableFuture<String> result = hedger.execute(failingAfter(1));
+        timer.last().fire();
+
+        assertThat(hedger.getHedged()).isZero();
+        assertThat(result).isNotDone();
+        attempts.get(attempts.size() - 1).completeExceptionally(new IllegalStateException("primary failed"));
+        assertThat(result).isCompletedExceptionally();
+
+        // The refunded hedge is still there for the next slow call
+        hedger.execute(this::attempt);
+        timer.last().fire();
+        assertThat(hedger.getHedged()).isEqualTo(1);
+    }
+
+    private RequestHedger hedger(int maxBurst) {
+        return new RequestHedger(true, 0.5, Duration.ofMillis(1), 10, maxBurst, timer, now::get);
+    }
+
+    // Feeds the hedger enough calls of LATENCY each for its delay to become LATENCY
+    private RequestHedger warmedUp(RequestHedger hedger) {
+        for (int i = 0; i < WARM_UP_CALLS; i++) {
+            hedger.execute(this::attempt);
+            now.addAndGet(LATENCY);
+            attempts.get(attempts.size() - 1).complete("warm-up");
+        }
+        assertThat(hedger.getHedgeDelayMillis()).isEqualTo(5.0);
+        attempts.clear();
+        return hedger;
+    }
+
+    private CompletableFuture<String> attempt() {
+        CompletableFuture<String> attempt = new CompletableFuture<>();
+        attempts.add(attempt);
+        return attempt;
+    }
+
+    // Hands out `started` attempts, then throws as if the attempt was shed before it started
+    private Supplier<CompletableFuture<String>> failingAfter(int started) {
+        AtomicLong calls = new AtomicLong();
+        return () -> {
+            if (calls.incrementAndGet() > started) {
+                throw new IllegalStateException("shed");
+            }
+            return attempt();
+        };
+    }
+
+    // Records scheduled hedges instead of running them; tests fire them by hand
+    private static final class ManualTimer extends ScheduledThreadPoolExecutor {
+
+        final List<Scheduled> scheduled = new ArrayList<>();
+
+        ManualTimer() {
+            super(1);
+        }
+
+        @Override
+        public ScheduledFuture<?> schedule(Runnable command, long delay, TimeUnit unit) {
+            Scheduled task = new Scheduled(command, unit.toNanos(delay));
+            scheduled.add(task);
+            return task;
+        }
+
+        Scheduled last() {
+            return scheduled.get(scheduled.size() - 1);
+        }
+    }
+
+    private static final class Scheduled implements ScheduledFuture<Object> {
+
+        final Runnable command;
+        final long delayNanos;
+        private boolean cancelled;
+        private boolean done;
+
+        Scheduled(Runnable command, long delayNanos) {
+            this.command = command;
+            this.delayNanos = delayNanos;
+        }
+
+        // Runs the task as the timer would once its delay is up, unless it was cancelled
+        void fire() {
+            if (!cancelled && !done) {
+                done = true;
+                command.run();
+            }
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(delayNanos, TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            return Long.compare(delayNanos, other.getDelay(TimeUnit.NANOSECONDS));
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            if (done) {
+                return false;
+            }
+            cancelled = true;
+            done = true;
+            return true;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        @Override
+        public boolean isDone() {
+            return done;
+        }
+
+        @Override
+        public Object get() {
+            return null;
+        }
+
+        @Override
+        public Object get(long timeout, TimeUnit unit) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,281 @@
+package com.interview.microservices.proof.dlq.service;
+
+import com.interview.microservices.proof.dlq.model.FailedPayment;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class FailedPaymentStoreTest {
+
+    private static final int SEGMENT_SIZE_MB = 1;
+    // Three of these fill most of a 1 MB segment
+    private static final int LARGE_REASON_LENGTH = 300_000;
+
+    @TempDir
+    Path directory;
+
+    private final List<FailedPaymentStore> stores = new ArrayList<>();
+    private final Instant now = Instant.now().truncatedTo(ChronoUnit.MILLIS);
+
+    @AfterEach
+    void flushStores() {
+        stores.forEach(FailedPaymentStore::flush);
+    }
+
+    @Test
+    void roundTripsEveryField() throws IOException {
+        FailedPaymentStore store = open();
+        FailedPayment payment = payment("pay-1", "user-1", "Insufficient funds", now);
+
+        store.append(payment);
+
+        assertThat(store.findByPaymentId("pay-1")).get().usingRecursiveComparison().isEqualTo(payment);
+    }
+
+    @Test
+    void roundTripsMissingFields() throws IOException {
+        FailedPaymentStore store = open();
+        FailedPayment payment = new FailedPayment();
+        payment.setPaymentId("pay-1");
+        payment.setFailedAt(now);
+
+        store.append(payment);
+
+        assertThat(store.findByPaymentId("pay-1")).get().usingRecursiveComparison().isEqualTo(payment);
+    }
+
+    @Test
+    void storesReasonsLongerThan64Kb() throws IOException {
+        FailedPaymentStore store = open();
+        String reason = "Zahlung fehlgeschlagen – ".repeat(4_000);
+        assertThat(reason.length()).isGreaterThan(65_535);
+
+        store.append(payment("pay-1", "user-1", reason, now));
+
+        assertThat(store.findByPaymentId("pay-1")).get().extracting(FailedPayment::getReason).isEqualTo(reason);
+    }
+
+    @Test
+    void findsByUserAndTimeRangeNewestFirst() throws IOException {
+        FailedPaymentStore store = open();
+        store.append(payment("pay-1", "user-1", "a", now.minusSeconds(30)));
+        store.append(payment("pay-2", "user-2", "b", now.minusSeconds(20)));
+        store.append(payment("pay-3", "user-1", "c", now.minusSeconds(10)));
+
+        assertThat(store.find("user-1", null, null, 10))
+                .extracting(FailedPayment::getPaymentId).containsExactly("pay-3", "pay-1");
+        assertThat(store.find(null, now.minusSeconds(25), now, 10))
+                .extracting(FailedPayment::getPaymentId).containsExactly("pay-3", "pay-2");
+        assertThat(store.find(null, null, null, 1))
+                .extracting(FailedPayment::getPaymentId).containsExactly("pay-3");
+    }
+
+    @Test
+    void newerFailureSupersedesTheOlderOne() throws IOException {
+        FailedPaymentStore store = open();
+        store.append(payment("pay-1", "user-1", "first", now.minusSeconds(10)));
+        store.append(payment("pay-1", "user-1", "second", now));
+
+        assertThat(store.size()).isEqualTo(1);
+        assertThat(store.findByPaymentId("pay-1")).get().extracting(FailedPayment::getReason).isEqualTo("second");
+        assertThat(store.find("user-1", null, null, 10)).hasSize(1);
+    }
+
+    @Test
+    void recoversRecordsAfterRestart() throws IOException {
+        FailedPaymentStore store = open();
+        FailedPayment first = payment("pay-1", "user-1", "first", now.minusSeconds(10));
+        FailedPayment second = payment("pay-2", "user-2", "x".repeat(LARGE_REASON_LENGTH), now.minusSeconds(5));
+        store.append(first);
+        store.append(second);
+        store.append(payment("pay-1", "user-1", "retried", now));
+        store.flush();
+
+        FailedPaymentStore reopened = open();
+
+        assertThat(reopened.size()).isEqualTo(2);
+        assertThat(reopened.findByPaymentId("pay-1")).get().extracting(FailedPayment::getReason).isEqualTo("retried");
+        assertThat(reopened.findByPaymentId("pay-2")).get().usingRecursiveComparison().isEqualTo(second);
+        assertThat(reopened.find(null, null, null, 10))
+                .extracting(FailedPayment::getPaymentId).containsExactly("pay-1", "pay-2");
+    }
+
+    @Test
+    void appendsAfterRecoveredRecordsInsteadOfOverwritingThem() throws IOException {
+        open().append(payment("pay-1", "user-1", "first", now.minusSeconds(10)));
+
+        FailedPaymentStore reopened = open();
+        reopened.append(payment("pay-2", "user-1", "second", now));
+        reopened.flush();
+
+        assertThat(open().find("user-1", null, null, 10))
+                .extracting(FailedPayment::getPaymentId).containsExactly("pay-2", "pay-1");
+    }
+
+    @Test
+    void readsVersion1Records() throws IOException {
+        writeSegment(legacyRecord(1, "pay-1", "user-1", "legacy reason", now));
+
+        FailedPaymentStore store = open();
+
+        assertThat(store.findByPaymentId("pay-1")).get()
+                .usingRecursiveComparison().isEqualTo(legacyPayment("pay-1", "user-1", "legacy reason", now));
+    }
+
+    @Test
+    void readsVersion2Records() throws IOException {
+        writeSegment(legacyRecord(2, "pay-1", "user-1", "legacy reason", now));
+
+        FailedPaymentStore store = open();
+
+        assertThat(store.findByPaymentId("pay-1")).get()
+                .usingRecursiveComparison().isEqualTo(legacyPayment("pay-1", "user-1", "legacy reason", now));
+    }
+
+    @Test
+    void compactsMostlySupersededSegments() throws IOException {
+        FailedPaymentStore store = open();
+        // Segment 0 holds pay-1..pay-3; pay-4 no longer fits and rolls over to segment 1
+        for (int i = 1; i <= 4; i++) {
+            store.append(payment("pay-" + i, "user-1", large("first-" + i), now.minusSeconds(60 - i)));
+        }
+        assertThat(segmentFiles()).hasSize(2);
+        // Superseding pay-1 and pay-2 leaves one live record of three in segment 0
+        store.append(payment("pay-1", "user-1", large("second-1"), now.minusSeconds(2)));
+        store.append(payment("pay-2", "user-1", large("second-2"), now.minusSeconds(1)));
+
+        store.maintain();
+
+        assertThat(segmentFiles()).doesNotContain(directory.resolve("segment-0000000000.log"));
+        assertCompacted(store);
+        assertCompacted(open());
+    }
+
+    @Test
+    void dropsSegmentsPastRetention() throws IOException {
+        FailedPaymentStore store = open();
+        Instant expired = now.minus(Duration.ofDays(40));
+        for (int i = 1; i <= 4; i++) {
+            store.append(payment("pay-" + i, "user-1", large("old-" + i), expired));
+        }
+
+        store.maintain();
+
+        assertThat(store.size()).isEqualTo(1);
+        assertThat(store.findByPaymentId("pay-1")).isEmpty();
+        assertThat(store.find("user-1", null, null, 10))
+                .extracting(FailedPayment::getPaymentId).containsExactly("pay-4");
+    }
+
+    private void assertCompacted(FailedPaymentStore store) {
+        assertThat(store.size()).isEqualTo(4);
+        for (int i = 1; i <= 4; i++) {
+            String expected = large((i <= 2 ? "second-" : "first-") + i);
+            assertThat(store.findByPaymentId("pay-" + i)).get()
+                    .extracting(FailedPayment::getReason).isEqualTo(expected);
+        }
+        assertThat(store.find("user-1", null, null, 10)).hasSize(4);
+    }
+
+    private FailedPaymentStore open() throws IOException {
+        FailedPaymentStore store = new FailedPaymentStore(directory.toString(), SEGMENT_SIZE_MB, 30, 0.5);
+        stores.add(store);
+        return store;
+    }
+
+    private void writeSegment(byte[] payload) throws IOException {
+        ByteBuffer segment = ByteBuffer.allocate(4 + payload.length);
+        segment.putInt(payload.length).put(payload);
+        Files.write(directory.resolve("segment-0000000000.log"), segment.array());
+    }
+
+    private List<Path> segmentFiles() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.sorted().toList();
+        }
+    }
+
+    private static String large(String prefix) {
+        return prefix + "x".repeat(LARGE_REASON_LENGTH - prefix.length());
+    }
+
+    private static FailedPayment payment(String paymentId, String userId, String reason, Instant failedAt) {
+        FailedPayment payment = new FailedPayment();
+        payment.setPaymentId(paymentId);
+        payment.setUserId(userId);
+        payment.setAmount(new BigDecimal("150.75"));
+        payment.setCurrency("USD");
+        payment.setTimestamp(LocalDateTime.of(2025, 7, 16, 10, 30, 0, 123_000_000));
+        payment.setRetryCount(3);
+        payment.setReason(reason);
+        payment.setFailedAt(failedAt);
+        payment.setBroker("kafka");
+        payment.setExceptionClass("java.lang.IllegalStateException");
+        payment.setOriginalTopic("payment-events");
+        payment.setAttempts(4);
+        payment.setFirstFailureAt(failedAt.minusSeconds(14));
+        return payment;
+    }
+
+    // What records written before the broker and failure metadata were kept read back as
+    private static FailedPayment legacyPayment(String paymentId, String userId, String reason, Instant failedAt) {
+        FailedPayment payment = payment(paymentId, userId, reason, failedAt);
+        payment.setBroker(null);
+        payment.setExceptionClass(null);
+        payment.setOriginalTopic(null);
+        payment.setAttempts(0);
+        payment.setFirstFailureAt(null);
+        return payment;
+    }
+
+    // Version 1 wrote strings with writeUTF, version 2 as length-prefixed UTF-8; neither had the
+    // broker and failure metadata
+    private static byte[] legacyRecord(int version, String paymentId, String userId, String reason,
+                                       Instant failedAt) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(version);
+        out.writeLong(failedAt.toEpochMilli());
+        for (String value : new String[] {paymentId, userId, "150.75", "USD"}) {
+            writeLegacyString(out, version, value);
+        }
+        LocalDateTime timestamp = LocalDateTime.of(2025, 7, 16, 10, 30, 0, 123_000_000);
+        out.writeBoolean(true);
+        out.writeLong(timestamp.toEpochSecond(ZoneOffset.UTC));
+        out.writeInt(timestamp.getNano());
+        out.writeInt(3);
+        writeLegacyString(out, version, reason);
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private static void writeLegacyString(DataOutputStream out, int version, String value) throws IOException {
+        out.writeBoolean(true);
+        if (version == 1) {
+            out.writeUTF(value);
+        } else {
+            byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(utf8.length);
+            out.write(utf8);
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package com.interview.microservices.proof.dlq.util;
+
+import org.apache.kafka.clients.consumer.MockConsumer;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.clients.consumer.OffsetResetStrategy;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class OffsetTrackerTest {
+
+    private static final int MAX_PENDING = 4;
+
+    private final TopicPartition partition = new TopicPartition("payment-events", 0);
+    private final TopicPartition other = new TopicPartition("payment-events", 1);
+    private final MockConsumer<String, String> consumer = new MockConsumer<>(OffsetResetStrategy.EARLIEST);
+    private final OffsetTracker tracker = new OffsetTracker(MAX_PENDING);
+
+    @BeforeEach
+    void assign() {
+        consumer.assign(List.of(partition, other));
+    }
+
+    @Test
+    void commitsNothingWhileTheOldestRecordIsInFlight() {
+        track(partition, 10, 11, 12);
+        tracker.complete(partition, 11);
+        tracker.complete(partition, 12);
+        tracker.sync(consumer);
+
+        assertThat(committed(partition)).isNull();
+    }
+
+    @Test
+    void commitsUpToTheOldestRecordStillInFlightWhateverOrderRecordsFinishIn() {
+        track(partition, 10, 11, 12, 13);
+        tracker.complete(partition, 12);
+        tracker.complete(partition, 10);
+        tracker.sync(consumer);
+        assertThat(committed(partition)).isEqualTo(11);
+
+        tracker.complete(partition, 13);
+        tracker.sync(consumer);
+        assertThat(committed(partition)).isEqualTo(11);
+
+        tracker.complete(partition, 11);
+        tracker.sync(consumer);
+        assertThat(committed(partition)).isEqualTo(14);
+    }
+
+    @Test
+    void tracksPartitionsIndependently() {
+        track(partition, 10, 11);
+        track(other, 20);
+        tracker.complete(other, 20);
+        tracker.sync(consumer);
+
+        assertThat(committed(partition)).isNull();
+        assertThat(committed(other)).isEqualTo(21);
+    }
+
+    @Test
+    void pausesAPartitionAtTheLimitAndResumesItAtHalf() {
+        track(partition, 0, 1, 2);
+        tracker.sync(consumer);
+        assertThat(consumer.paused()).isEmpty();
+
+        track(partition, 3);
+        tracker.sync(consumer);
+        assertThat(consumer.paused()).containsExactly(partition);
+
+        tracker.complete(partition, 0);
+        tracker.sync(consumer);
+        assertThat(consumer.paused()).containsExactly(partition);
+
+        tracker.complete(partition, 1);
+        tracker.sync(consumer);
+        assertThat(consumer.paused()).isEmpty();
+        assertThat(committed(partition)).isEqualTo(2);
+    }
+
+    @Test
+    void commitsFinishedRecordsOfRevokedPartitionsAndForgetsTheRest() {
+        track(partition, 10, 11, 12);
+        tracker.complete(partition, 10);
+        tracker.complete(partition, 12);
+
+        tracker.onPartitionsRevokedBeforeCommit(consumer, List.of(partition));
+        assertThat(committed(partition)).isEqualTo(11);
+
+        // Records still in flight at revocation finish later; the new owner gets them redelivered
+        tracker.complete(partition, 11);
+        tracker.sync(consumer);
+        assertThat(committed(partition)).isEqualTo(11);
+    }
+
+    @Test
+    void startsOverOnAPartitionThatWasRevokedAndAssignedAgain() {
+        track(partition, 10, 11);
+        tracker.onPartitionsRevokedBeforeCommit(consumer, List.of(partition));
+
+        track(partition, 10);
+        tracker.complete(partition, 10);
+        tracker.sync(consumer);
+
+        assertThat(committed(partition)).isEqualTo(11);
+    }
+
+    @Test
+    void dropsLostPartitionsWithoutCommitting() {
+        track(partition, 10);
+        tracker.complete(partition, 10);
+
+        tracker.onPartitionsLost(consumer, List.of(partition));
+        tracker.sync(consumer);
+
+        assertThat(committed(partition)).isNull();
+    }
+
+    private void track(TopicPartition topicPartition, long... offsets) {
+        for (long offset : offsets) {
+            tracker.track(topicPartition, offset);
+        }
+    }
+
+    private Long committed(TopicPartition topicPartition) {
+        OffsetAndMetadata committed = consumer.committed(Set.of(topicPartition)).get(topicPartition);
+        return committed == null ? null : committed.offset();
+    }
+}
@@ -0,0 +1,65 @@
+package com.interview.microservices.proof.dlq.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RotatingBloomFilterTest {
+
+    private static final Duration GENERATION = Duration.ofHours(1);
+
+    private final AtomicLong now = new AtomicLong(1_000_000);
+    private final RotatingBloomFilter filter = new RotatingBloomFilter(1000, 0.01, GENERATION, now::get);
+
+    @Test
+    void keepsAValueForTheRestOfItsGeneration() {
+        filter.put("pay-1");
+        advance(GENERATION.minusMillis(1));
+
+        assertThat(filter.mightContain("pay-1")).isTrue();
+    }
+
+    @Test
+    void keepsAValueThroughOneRotation() {
+        filter.put("pay-1");
+        advance(GENERATION);
+
+        assertThat(filter.mightContain("pay-1")).isTrue();
+    }
+
+    @Test
+    void dropsAValueAfterTwoRotations() {
+        filter.put("pay-1");
+        advance(GENERATION);
+        assertThat(filter.mightContain("pay-1")).isTrue();
+        advance(GENERATION);
+
+        assertThat(filter.mightContain("pay-1")).isFalse();
+    }
+
+    @Test
+    void dropsBothGenerationsAfterAWholeIdleGeneration() {
+        filter.put("pay-1");
+        advance(GENERATION.multipliedBy(2));
+
+        assertThat(filter.mightContain("pay-1")).isFalse();
+    }
+
+    @Test
+    void putsNewValuesIntoTheCurrentGeneration() {
+        filter.put("pay-1");
+        advance(GENERATION);
+        filter.put("pay-2");
+        advance(GENERATION);
+
+        assertThat(filter.mightContain("pay-1")).isFalse();
+        assertThat(filter.mightContain("pay-2")).isTrue();
+    }
+
+    private void advance(Duration duration) {
+        now.addAndGet(duration.toMillis());
+    }
+}